@@ -0,0 +1,70 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for Alphabet lookups, on alphabets small enough for the
+ * dense table and large enough for the hashed one.
+ *
+ * @author Ryan Johnson
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AlphabetBench {
+
+    /**
+     * Number of characters in the alphabet.
+     */
+    @Param({"26", "64", "256"})
+    public int size;
+
+    /**
+     * Create the alphabet and the characters to look up.
+     */
+    @Setup
+    public void setUp() {
+        _alpha = new Alphabet(BenchMachines.chars(size));
+        _chars = BenchMachines.message(_alpha, BenchMachines.BATCH)
+            .toCharArray();
+    }
+
+    /**
+     * Return the sum of the indices of a batch of characters.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchMachines.BATCH)
+    public int toInt() {
+        int sum = 0;
+        for (char ch : _chars) {
+            sum += _alpha.toInt(ch);
+        }
+        return sum;
+    }
+
+    /**
+     * The alphabet under test.
+     */
+    private Alphabet _alpha;
+    /**
+     * Characters to look up.
+     */
+    private char[] _chars;
+
+}
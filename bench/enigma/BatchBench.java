@@ -0,0 +1,123 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for converting a queue of messages, each from its own
+ * rotor settings, one at a time by a Machine and in lockstep by a
+ * BatchMachine.  The benchmark JVM has the jdk.incubator.vector module,
+ * so that the engine from BatchMachine.create is a VectorBatchMachine
+ * when ../vector has been built.
+ *
+ * @author Ryan Johnson
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class BatchBench {
+
+    /**
+     * Length of each message.
+     */
+    @Param({"16", "256"})
+    public int length;
+
+    /**
+     * The engine: "machine", "scalar" (a BatchMachine), or "create"
+     * (whatever BatchMachine.create returns).
+     */
+    @Param({"machine", "scalar", "create"})
+    public String engine;
+
+    /**
+     * Create a random machine and a queue of random messages and
+     * settings for it.
+     */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = new Alphabet(BenchMachines.chars(26));
+        _machine = BenchMachines.machine(alpha, 4, false);
+        _batch = engine.equals("create") ? BatchMachine.create(_machine)
+            : new BatchMachine(_machine);
+        Random random = new Random(BenchMachines.SEED);
+        _settings = new String[MESSAGES];
+        _starts = new int[MESSAGES][4];
+        _messages = new int[MESSAGES][];
+        for (int k = 0; k < MESSAGES; k += 1) {
+            char[] setting = new char[4];
+            for (int i = 0; i < 4; i += 1) {
+                _starts[k][i] = random.nextInt(alpha.size());
+                setting[i] = alpha.toChar(_starts[k][i]);
+            }
+            _settings[k] = new String(setting);
+            _messages[k] = BenchMachines.indices(alpha, length);
+        }
+    }
+
+    /**
+     * Convert the queue, returning a sum of the results.  The messages
+     * are converted in place, so each invocation converts the results
+     * of the last.
+     */
+    @Benchmark
+    public int convertQueue() {
+        if (engine.equals("machine")) {
+            int sum = 0;
+            for (int k = 0; k < MESSAGES; k += 1) {
+                _machine.setRotors(_settings[k]);
+                int[] msg = _messages[k];
+                for (int i = 0; i < msg.length; i += 1) {
+                    msg[i] = _machine.convert(msg[i]);
+                    sum += msg[i];
+                }
+            }
+            return sum;
+        }
+        _batch.convert(_starts, _messages);
+        return _messages[MESSAGES - 1][0];
+    }
+
+    /**
+     * Number of messages in the queue.
+     */
+    static final int MESSAGES = 256;
+
+    /**
+     * The machine converting one message at a time, and the template of
+     * _batch.
+     */
+    private Machine _machine;
+    /**
+     * The engine under test, unless it is _machine.
+     */
+    private BatchMachine _batch;
+    /**
+     * Settings of each message, for _machine.
+     */
+    private String[] _settings;
+    /**
+     * Settings of each message, for _batch.
+     */
+    private int[][] _starts;
+    /**
+     * The messages, as indices.
+     */
+    private int[][] _messages;
+
+}
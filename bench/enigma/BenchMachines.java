@@ -0,0 +1,154 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Random alphabets, permutations, and machines for the benchmarks.
+ * All are generated from a fixed seed, so that every run measures the
+ * same configuration.
+ *
+ * @author Ryan Johnson
+ */
+class BenchMachines {
+
+    /**
+     * Not instantiable.
+     */
+    private BenchMachines() {
+    }
+
+    /**
+     * Return the characters of an alphabet of SIZE letters and digits,
+     * counting up from 'A'.  Alphabets of more than 117 characters
+     * reach beyond Latin-1.
+     */
+    static String chars(int size) {
+        StringBuilder chars = new StringBuilder();
+        for (char ch = 'A'; chars.length() < size; ch += 1) {
+            if (Character.isLetterOrDigit(ch)) {
+                chars.append(ch);
+            }
+        }
+        return chars.toString();
+    }
+
+    /**
+     * Return a random permutation of ALPHA, as a single cycle, using
+     * RANDOM.
+     */
+    static Permutation cycle(Alphabet alpha, Random random) {
+        List<Character> chars = shuffled(alpha, random);
+        StringBuilder cycles = new StringBuilder("(");
+        for (char ch : chars) {
+            cycles.append(ch);
+        }
+        return new Permutation(cycles.append(')').toString(), alpha);
+    }
+
+    /**
+     * Return a random derangement of ALPHA made of PAIRS 2-cycles, using
+     * RANDOM.  PAIRS is at most half the size of ALPHA.
+     */
+    static Permutation swaps(Alphabet alpha, int pairs, Random random) {
+        List<Character> chars = shuffled(alpha, random);
+        StringBuilder cycles = new StringBuilder();
+        for (int i = 0; i < pairs; i += 1) {
+            cycles.append('(').append(chars.get(2 * i))
+                .append(chars.get(2 * i + 1)).append(')');
+        }
+        return new Permutation(cycles.toString(), alpha);
+    }
+
+    /**
+     * Return a random machine on ALPHA with a reflector and ROTORS
+     * further rotor slots, the rightmost three (or fewer) of which
+     * move.  Its rotors are inserted and set at random, and it has a
+     * plugboard of ten swaps.  If COMPILED, it is a CompiledMachine.
+     * The size of ALPHA must be even and at least 20.
+     */
+    static Machine machine(Alphabet alpha, int rotors, boolean compiled) {
+        Random random = new Random(SEED);
+        int pawls = Math.min(rotors, 3);
+        ArrayList<Rotor> all = new ArrayList<Rotor>();
+        String[] names = new String[rotors + 1];
+        names[0] = "R";
+        all.add(new Reflector(names[0],
+                              swaps(alpha, alpha.size() / 2, random)));
+        StringBuilder setting = new StringBuilder();
+        for (int i = 1; i <= rotors; i += 1) {
+            names[i] = "W" + i;
+            Permutation perm = cycle(alpha, random);
+            if (i <= rotors - pawls) {
+                all.add(new FixedRotor(names[i], perm));
+            } else {
+                String notch = String.valueOf(
+                    alpha.toChar(random.nextInt(alpha.size())));
+                all.add(new MovingRotor(names[i], perm, notch));
+            }
+            setting.append(alpha.toChar(random.nextInt(alpha.size())));
+        }
+        Machine machine = compiled
+            ? new CompiledMachine(alpha, rotors + 1, pawls, all, CAPACITY)
+            : new Machine(alpha, rotors + 1, pawls, all);
+        machine.insertRotors(names);
+        machine.setRotors(setting.toString());
+        machine.setPlugboard(swaps(alpha, 10, random));
+        return machine;
+    }
+
+    /**
+     * Return a random message of LENGTH characters from ALPHA.
+     */
+    static String message(Alphabet alpha, int length) {
+        Random random = new Random(SEED);
+        char[] msg = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            msg[i] = alpha.toChar(random.nextInt(alpha.size()));
+        }
+        return new String(msg);
+    }
+
+    /**
+     * Return an array of N random indices into ALPHA.
+     */
+    static int[] indices(Alphabet alpha, int n) {
+        Random random = new Random(SEED);
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = random.nextInt(alpha.size());
+        }
+        return result;
+    }
+
+    /**
+     * Return the characters of ALPHA in an order shuffled by RANDOM.
+     */
+    private static List<Character> shuffled(Alphabet alpha, Random random) {
+        ArrayList<Character> chars = new ArrayList<Character>();
+        for (int i = 0; i < alpha.size(); i += 1) {
+            chars.add(alpha.toChar(i));
+        }
+        Collections.shuffle(chars, random);
+        return chars;
+    }
+
+    /**
+     * Number of operations in each invocation of the benchmarks that
+     * loop over an array of inputs.
+     */
+    static final int BATCH = 1024;
+
+    /**
+     * Number of tables kept by compiled machines.
+     */
+    static final int CAPACITY = 1 << 12;
+
+    /**
+     * Seed for all random configurations.
+     */
+    static final long SEED = 61;
+
+}
@@ -0,0 +1,124 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for Machine.convert on single characters and on whole
+ * messages, by ordinary and compiled machines.  The machine keeps
+ * stepping from one invocation to the next, so all of its rotor
+ * positions are measured.
+ *
+ * @author Ryan Johnson
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MachineBench {
+
+    /**
+     * Number of characters in the alphabet.
+     */
+    @Param({"26", "64", "256"})
+    public int size;
+
+    /**
+     * Number of rotor slots, not counting the reflector.
+     */
+    @Param({"3", "5", "8"})
+    public int rotors;
+
+    /**
+     * Whether the machine is a CompiledMachine.
+     */
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    /**
+     * A random message for convertString.  A separate state, so that
+     * only convertString is run at each message length.
+     */
+    @State(Scope.Thread)
+    public static class Message {
+
+        /**
+         * Length of the message.
+         */
+        @Param({"16", "1024", "65536"})
+        public int length;
+
+        /**
+         * Create the message on the alphabet of BENCH.
+         */
+        @Setup
+        public void setUp(MachineBench bench) {
+            _text = BenchMachines.message(bench._alpha, length);
+        }
+
+        /**
+         * The message.
+         */
+        private String _text;
+
+    }
+
+    /**
+     * Create a random machine and indices to convert.
+     */
+    @Setup
+    public void setUp() {
+        _alpha = new Alphabet(BenchMachines.chars(size));
+        _machine = BenchMachines.machine(_alpha, rotors, compiled);
+        _indices = BenchMachines.indices(_alpha, BenchMachines.BATCH);
+    }
+
+    /**
+     * Return the sum of the conversions of a batch of indices.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchMachines.BATCH)
+    public int convertInt() {
+        int sum = 0;
+        for (int c : _indices) {
+            sum += _machine.convert(c);
+        }
+        return sum;
+    }
+
+    /**
+     * Return the conversion of MESSAGE.
+     */
+    @Benchmark
+    public String convertString(Message message) {
+        return _machine.convert(message._text);
+    }
+
+    /**
+     * The alphabet of _machine.
+     */
+    private Alphabet _alpha;
+    /**
+     * The machine under test.
+     */
+    private Machine _machine;
+    /**
+     * Indices converted by convertInt.
+     */
+    private int[] _indices;
+
+}
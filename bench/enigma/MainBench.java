@@ -0,0 +1,99 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end benchmarks of Main on the inputs in testing/correct,
+ * from reading the configuration to flushing the output file.  The
+ * directory of inputs is ../testing/correct unless the system property
+ * enigma.corpora names another.
+ *
+ * @author Ryan Johnson
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MainBench {
+
+    /**
+     * Name of the input, without its ".in".  Its configuration is
+     * NAME.conf if that exists, and otherwise default.conf, as in
+     * testing/test-correct.
+     */
+    @Param({"carroll", "multi", "extracredit", "newchars", "permuted",
+            "reduced"})
+    public String corpus;
+
+    /**
+     * Option to pass to Main, if any.
+     */
+    @Param({"", "--mmap", "--parallel"})
+    public String option;
+
+    /**
+     * Find the input and configuration and create the output file.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        File dir = new File(System.getProperty("enigma.corpora",
+                                               "../testing/correct"));
+        File conf = new File(dir, corpus + ".conf");
+        if (!conf.exists()) {
+            conf = new File(dir, "default.conf");
+        }
+        _output = File.createTempFile("enigma", ".out");
+        ArrayList<String> args = new ArrayList<String>();
+        if (!option.isEmpty()) {
+            args.add(option);
+        }
+        args.add(conf.getPath());
+        args.add(new File(dir, corpus + ".in").getPath());
+        args.add(_output.getPath());
+        _args = args.toArray(new String[args.size()]);
+    }
+
+    /**
+     * Remove the output file.
+     */
+    @TearDown
+    public void tearDown() {
+        _output.delete();
+    }
+
+    /**
+     * Convert the whole input, as "java enigma.Main" would.
+     */
+    @Benchmark
+    public void process() {
+        new Main(_args).process();
+    }
+
+    /**
+     * Output file, overwritten by each invocation.
+     */
+    private File _output;
+    /**
+     * Command-line arguments for Main.
+     */
+    private String[] _args;
+
+}
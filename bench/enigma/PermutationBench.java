@@ -0,0 +1,83 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for Permutation.permute and Permutation.invert.
+ *
+ * @author Ryan Johnson
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PermutationBench {
+
+    /**
+     * Number of characters in the alphabet.
+     */
+    @Param({"26", "64", "256"})
+    public int size;
+
+    /**
+     * Create a random permutation and the indices to apply it to.
+     */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = new Alphabet(BenchMachines.chars(size));
+        _perm = BenchMachines.cycle(alpha, new Random(BenchMachines.SEED));
+        _indices = BenchMachines.indices(alpha, BenchMachines.BATCH);
+    }
+
+    /**
+     * Return the sum of the images of a batch of indices.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchMachines.BATCH)
+    public int permute() {
+        int sum = 0;
+        for (int p : _indices) {
+            sum += _perm.permute(p);
+        }
+        return sum;
+    }
+
+    /**
+     * Return the sum of the inverse images of a batch of indices.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchMachines.BATCH)
+    public int invert() {
+        int sum = 0;
+        for (int c : _indices) {
+            sum += _perm.invert(c);
+        }
+        return sum;
+    }
+
+    /**
+     * The permutation under test.
+     */
+    private Permutation _perm;
+    /**
+     * Indices to permute.
+     */
+    private int[] _indices;
+
+}
@@ -0,0 +1,89 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for PositionedRotor.convertForward and convertBackward,
+ * with the rotor at a random setting and ring setting.
+ *
+ * @author Ryan Johnson
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RotorBench {
+
+    /**
+     * Number of characters in the alphabet.
+     */
+    @Param({"26", "64", "256"})
+    public int size;
+
+    /**
+     * Create a random rotor and the indices to convert.
+     */
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchMachines.SEED);
+        Alphabet alpha = new Alphabet(BenchMachines.chars(size));
+        _rotor = new PositionedRotor(
+            new MovingRotor("W", BenchMachines.cycle(alpha, random),
+                            String.valueOf(alpha.toChar(0))));
+        _rotor.set(random.nextInt(size));
+        _rotor.setAlphabetRing(alpha.toChar(random.nextInt(size)));
+        _indices = BenchMachines.indices(alpha, BenchMachines.BATCH);
+    }
+
+    /**
+     * Return the sum of the forward conversions of a batch of indices.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchMachines.BATCH)
+    public int convertForward() {
+        int sum = 0;
+        for (int p : _indices) {
+            sum += _rotor.convertForward(p);
+        }
+        return sum;
+    }
+
+    /**
+     * Return the sum of the backward conversions of a batch of indices.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchMachines.BATCH)
+    public int convertBackward() {
+        int sum = 0;
+        for (int e : _indices) {
+            sum += _rotor.convertBackward(e);
+        }
+        return sum;
+    }
+
+    /**
+     * The rotor under test.
+     */
+    private PositionedRotor _rotor;
+    /**
+     * Indices to convert.
+     */
+    private int[] _indices;
+
+}
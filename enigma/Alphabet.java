@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.error;
 
 /**
@@ -16,6 +18,44 @@ class Alphabet {
      */
     Alphabet(String chars) {
         _newAlphabet = chars;
+        char max = 0;
+        for (int i = 0; i < chars.length(); i++) {
+            max = (char) Math.max(max, chars.charAt(i));
+        }
+        if (max < DENSE_LIMIT) {
+            _dense = new int[max + 1];
+            Arrays.fill(_dense, -1);
+            for (int i = 0; i < chars.length(); i++) {
+                char ch = chars.charAt(i);
+                if (_dense[ch] >= 0) {
+                    throw error("duplicate character '%c' in alphabet", ch);
+                }
+                _dense[ch] = i;
+            }
+            if (max < ASCII_LIMIT) {
+                _bytes = Arrays.copyOf(_dense, BYTE_VALUES);
+                Arrays.fill(_bytes, _dense.length, BYTE_VALUES, -1);
+            }
+        } else {
+            int capacity = Integer.highestOneBit(chars.length() * 2) * 2;
+            _shift = Integer.numberOfLeadingZeros(capacity) + 1;
+            _keys = new char[capacity];
+            _values = new int[capacity];
+            Arrays.fill(_values, -1);
+            for (int i = 0; i < chars.length(); i++) {
+                char ch = chars.charAt(i);
+                int h = slot(ch);
+                while (_values[h] >= 0) {
+                    if (_keys[h] == ch) {
+                        throw error("duplicate character '%c' in alphabet",
+                                ch);
+                    }
+                    h = (h + 1) & (capacity - 1);
+                }
+                _keys[h] = ch;
+                _values[h] = i;
+            }
+        }
     }
 
     /**
@@ -36,12 +76,7 @@ class Alphabet {
      * Returns true if CH is in this alphabet.
      */
     boolean contains(char ch) {
-        for (int i = 0; i < size(); i++) {
-            if (_newAlphabet.charAt(i) == ch) {
-                return true;
-            }
-        }
-        return false;
+        return indexOf(ch) >= 0;
     }
 
     /**
@@ -60,22 +95,103 @@ class Alphabet {
      * the alphabet. This is the inverse of toChar().
      */
     int toInt(char ch) {
-        Integer index = null;
-        for (int i = 0; i < size(); i++) {
-            if (_newAlphabet.charAt(i) == ch) {
-                index = i;
-                break;
-            }
+        int index = indexOf(ch);
+        if (index < 0) {
+            throw error("not in alphabet");
         }
-        if (index == null) {
+        return index;
+    }
+
+    /**
+     * Returns true iff every character in this alphabet is ASCII, and so
+     * is a single byte, of the same value, in any ASCII-compatible
+     * encoding.
+     */
+    boolean ascii() {
+        return _bytes != null;
+    }
+
+    /**
+     * Returns the index of the ASCII character encoded as B, which must
+     * be in this alphabet, which must be ascii().
+     */
+    int toInt(byte b) {
+        int index = _bytes[b & 0xff];
+        if (index < 0) {
             throw error("not in alphabet");
         }
-        return (int) index;
+        return index;
+    }
+
+    /**
+     * Returns character number INDEX in this alphabet, which must be
+     * ascii(), as a byte.
+     */
+    byte toByte(int index) {
+        return (byte) toChar(index);
+    }
+
+    /**
+     * Returns the index of CH in this alphabet, or -1 if it is absent.
+     */
+    private int indexOf(char ch) {
+        if (_dense != null) {
+            return ch < _dense.length ? _dense[ch] : -1;
+        }
+        int mask = _keys.length - 1;
+        for (int h = slot(ch); _values[h] >= 0; h = (h + 1) & mask) {
+            if (_keys[h] == ch) {
+                return _values[h];
+            }
+        }
+        return -1;
     }
 
+    /**
+     * Returns the home slot of CH in the open-addressed table.
+     */
+    private int slot(char ch) {
+        return (ch * 0x9E3779B9) >>> _shift;
+    }
+
+    /**
+     * Characters below this bound are indexed through a dense table.
+     */
+    private static final int DENSE_LIMIT = 256;
+    /**
+     * Characters below this bound are ASCII.
+     */
+    private static final int ASCII_LIMIT = 128;
+    /**
+     * Number of values of a byte.
+     */
+    private static final int BYTE_VALUES = 256;
+
     /**
      * The alphabet.
      */
     private String _newAlphabet;
+    /**
+     * Index of each character, by character code, or -1 if absent.
+     * Null when the alphabet has characters outside Latin-1.
+     */
+    private int[] _dense;
+    /**
+     * Index of each character, by the unsigned value of its byte, or -1
+     * if absent.  Null unless the alphabet is all ASCII.
+     */
+    private int[] _bytes;
+    /**
+     * Characters of the open-addressed table used for wide alphabets.
+     */
+    private char[] _keys;
+    /**
+     * Indices matching _keys, or -1 for an empty slot.
+     */
+    private int[] _values;
+    /**
+     * Shift that reduces a hash to a slot of _keys.
+     */
+    private int _shift;
 
 }
@@ -0,0 +1,79 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+/**
+ * The suite of all JUnit tests for the Alphabet class.
+ *
+ * @author Ryan Johnson
+ */
+public class AlphabetTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCase1() {
+        Alphabet a = new Alphabet("ABCD");
+        assertEquals(4, a.size());
+        assertEquals(0, a.toInt('A'));
+        assertEquals(3, a.toInt('D'));
+        assertEquals('C', a.toChar(2));
+        assertTrue(a.contains('B'));
+        assertFalse(a.contains('E'));
+        assertFalse(a.contains('\u4e2d'));
+    }
+
+    @Test
+    public void testCase2() {
+        Alphabet a = new Alphabet("\u03b1\u03b2\u4e2d\u6587Z");
+        assertEquals(5, a.size());
+        assertEquals(0, a.toInt('\u03b1'));
+        assertEquals(3, a.toInt('\u6587'));
+        assertEquals(4, a.toInt('Z'));
+        assertTrue(a.contains('\u4e2d'));
+        assertFalse(a.contains('A'));
+        assertFalse(a.contains('\u03b3'));
+    }
+
+    @Test
+    public void testAscii() {
+        Alphabet a = new Alphabet("AB1z");
+        assertTrue(a.ascii());
+        assertEquals(2, a.toInt((byte) '1'));
+        assertEquals(3, a.toInt((byte) 'z'));
+        assertEquals((byte) 'B', a.toByte(1));
+        assertFalse(new Alphabet("AB\u00e9").ascii());
+        assertFalse(new Alphabet("\u03b1\u03b2").ascii());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testByteNotInAlphabet() {
+        new Alphabet("ABCD").toInt((byte) 0xc4);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotInAlphabet() {
+        new Alphabet("ABCD").toInt('E');
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicate() {
+        new Alphabet("ABCA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testWideDuplicate() {
+        new Alphabet("\u4e2dA\u4e2d");
+    }
+
+}
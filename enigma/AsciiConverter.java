@@ -0,0 +1,95 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Converts and formats message lines held as bytes, for machines whose
+ * alphabets are ASCII, reading and writing text in an ASCII-compatible
+ * encoding.  A line goes from its input bytes to its grouped output
+ * bytes without ever being decoded into chars.
+ *
+ * @author Ryan Johnson
+ */
+class AsciiConverter {
+
+    /**
+     * Return true iff CHARSET encodes each ASCII character as the one
+     * byte of the same value, and uses bytes below 128 for nothing else.
+     */
+    static boolean compatible(Charset charset) {
+        return COMPATIBLE.contains(charset);
+    }
+
+    /**
+     * Return the largest number of bytes convertLine writes for an input
+     * line of LEN bytes.
+     */
+    static int maxOutput(int len) {
+        return len + len / GroupWriter.GROUP + GroupWriter.NEWLINE.length;
+    }
+
+    /**
+     * Convert the message line of LEN bytes of IN starting at OFF using
+     * M, whose alphabet must be ascii(), and write the result into OUT
+     * starting at OUTOFF as Main prints message lines: spaces are
+     * removed, and the converted characters are written in groups of
+     * five separated by spaces and followed by a line separator.
+     * Writes nothing if the line is all spaces.  OUT must have room for
+     * maxOutput(LEN) bytes, and must not overlap IN.  Returns the number
+     * of bytes written.
+     */
+    int convertLine(Machine M, byte[] in, int off, int len,
+                    byte[] out, int outOff) {
+        int n = 0;
+        for (int i = off; i < off + len; i++) {
+            if (in[i] != ' ') {
+                out[outOff + n] = in[i];
+                n += 1;
+            }
+        }
+        return format(M, n, out, outOff);
+    }
+
+    /**
+     * Convert the message line in the remaining bytes of IN as for
+     * convertLine(M, byte[], ...), writing the result into OUT starting
+     * at OUTOFF and consuming IN.  Returns the number of bytes written.
+     */
+    int convertLine(Machine M, ByteBuffer in, byte[] out, int outOff) {
+        int n = 0;
+        while (in.hasRemaining()) {
+            byte b = in.get();
+            if (b != ' ') {
+                out[outOff + n] = b;
+                n += 1;
+            }
+        }
+        return format(M, n, out, outOff);
+    }
+
+    /**
+     * Convert the N bytes of OUT starting at OUTOFF using M in place,
+     * and spread them into groups followed by a line separator if N is
+     * positive.  Returns the number of bytes taken up.
+     */
+    private int format(Machine M, int n, byte[] out, int outOff) {
+        if (n == 0) {
+            return 0;
+        }
+        M.convert(out, outOff, n, out, outOff);
+        int pos = outOff + GroupWriter.spread(out, outOff, n, 0);
+        return pos + GroupWriter.newLine(out, pos) - outOff;
+    }
+
+    /**
+     * The ASCII-compatible encodings.
+     */
+    private static final List<Charset> COMPATIBLE =
+        Arrays.asList(StandardCharsets.US_ASCII, StandardCharsets.ISO_8859_1,
+                      StandardCharsets.UTF_8);
+
+}
@@ -0,0 +1,92 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.TestUtils.navalMachine;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** The suite of all JUnit tests for the AsciiConverter class.
+ *  @author Ryan Johnson
+ */
+public class AsciiConverterTest {
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return S encoded in ASCII. */
+    private byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /** Return the first LEN bytes of B decoded from ASCII. */
+    private String ascii(byte[] b, int len) {
+        return new String(b, 0, len, StandardCharsets.US_ASCII);
+    }
+
+    /** Return MSG in groups of five, followed by a line separator. */
+    private String grouped(String msg) {
+        return msg.replaceAll("(.{5})(?!$)", "$1 ") + System.lineSeparator();
+    }
+
+    @Test
+    public void testConvertLine() {
+        String expected = navalMachine("AXLE", null, PLUGBOARD)
+            .convert("FROMHISSHOULDERHIAWATHA");
+        AsciiConverter converter = new AsciiConverter();
+        byte[] in = ascii("--FROM HIS SHOUL DER HIAWATHA");
+        byte[] out = new byte[2 + AsciiConverter.maxOutput(in.length)];
+        int n = converter.convertLine(navalMachine("AXLE", null, PLUGBOARD),
+                                      in, 2, in.length - 2, out, 2);
+        assertEquals(grouped(expected), ascii(out, n + 2).substring(2));
+        Machine M = navalMachine("AXLE", null, PLUGBOARD);
+        n = converter.convertLine(M, ByteBuffer.wrap(ascii("FROMH IS")),
+                                  out, 0);
+        assertEquals(grouped(expected.substring(0, 7)), ascii(out, n));
+        n = converter.convertLine(M, ByteBuffer.wrap(ascii("SHO")), out, 0);
+        assertEquals(grouped(expected.substring(7, 10)), ascii(out, n));
+        assertEquals(0, converter.convertLine(M, ascii("   "), 0, 3, out, 0));
+    }
+
+    @Test
+    public void testLongLine() {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            line.append((char) ('A' + i % 26));
+        }
+        AsciiConverter converter = new AsciiConverter();
+        byte[] out = new byte[AsciiConverter.maxOutput(line.length())];
+        int n = converter.convertLine(navalMachine("AXLE", null, PLUGBOARD),
+                                      ascii(line.toString()),
+                                      0, line.length(), out, 0);
+        String expected = navalMachine("AXLE", null, PLUGBOARD)
+            .convert(line.toString());
+        assertEquals(grouped(expected), ascii(out, n));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotInAlphabet() {
+        byte[] out = new byte[AsciiConverter.maxOutput(3)];
+        new AsciiConverter().convertLine(navalMachine("AXLE", null, PLUGBOARD),
+                                         ascii("AbC"), 0, 3, out, 0);
+    }
+
+    @Test
+    public void testCompatible() {
+        assertTrue(AsciiConverter.compatible(StandardCharsets.US_ASCII));
+        assertTrue(AsciiConverter.compatible(StandardCharsets.UTF_8));
+        assertFalse(AsciiConverter.compatible(StandardCharsets.UTF_16));
+    }
+
+    /** The plugboard of carroll.in. */
+    private static final String PLUGBOARD = "(HQ) (EX) (IP) (TR) (BY)";
+
+}
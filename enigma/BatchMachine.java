@@ -0,0 +1,374 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * An engine that converts many messages at once, each from its own
+ * rotor settings, with the wheel order, alphabet rings, and plugboard
+ * of one machine.  Messages are converted in groups of lanes() at a
+ * time, in lockstep: every keystroke steps the rotors of all the lanes
+ * of a group, then passes all of their characters through each rotor
+ * in turn.  The positions of the lanes are kept slot by slot, and the
+ * characters of a group keystroke by keystroke, so that each step of
+ * the work is a loop over adjacent lanes.
+ *
+ * <p>The conversions are those that Machine.convert(int) would make
+ * for each message after setRotors with its settings.  This class does
+ * them one lane at a time.  If the class enigma.VectorBatchMachine is
+ * on the class path and the jdk.incubator.vector module is present,
+ * create returns one of those instead, which does them with the Java
+ * Vector API.
+ *
+ * @author Ryan Johnson
+ */
+class BatchMachine {
+
+    /**
+     * An engine converting with the rotors, rotor slots, alphabet rings,
+     * and plugboard of MACHINE as they are now.  MACHINE must have all
+     * its slots filled, with no rotor in more than one of them.  Later
+     * changes to MACHINE do not affect me.
+     */
+    BatchMachine(Machine machine) {
+        int slots = machine.insertedRotors();
+        if (slots != machine.numRotors() || machine.plugboard() == null) {
+            throw error("machine is not set up");
+        }
+        HashSet<Rotor> seen = new HashSet<Rotor>();
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _rotates = new boolean[slots];
+        _rings = new int[slots];
+        _reflector = machine.setting(0);
+        _forward = new int[slots][];
+        _backward = new int[slots][];
+        _notches = new int[slots][];
+        for (int i = 0; i < slots; i++) {
+            Rotor rotor = machine.rotor(i);
+            if (!seen.add(rotor)) {
+                throw error("rotor %s is in more than one slot",
+                            rotor.name());
+            }
+            Permutation perm = rotor.permutation();
+            _rotates[i] = rotor.rotates();
+            _rings[i] = wrap(machine.setting(i) - machine.offset(i));
+            _forward[i] = new int[2 * _size];
+            _backward[i] = new int[2 * _size];
+            _notches[i] = new int[_size];
+            for (int p = 0; p < 2 * _size; p++) {
+                _forward[i][p] = perm.permute(p % _size);
+                _backward[i][p] = perm.invert(p % _size);
+            }
+            for (int p = 0; p < _size; p++) {
+                _notches[i][p] = rotor.notchAt(p) ? 1 : 0;
+            }
+        }
+        _plugboard = new int[_size];
+        for (int c = 0; c < _size; c++) {
+            _plugboard[c] = machine.plugboard().permute(c);
+        }
+    }
+
+    /**
+     * Return an engine for MACHINE as for BatchMachine(MACHINE): a
+     * VectorBatchMachine if one can be loaded, and otherwise a
+     * BatchMachine.
+     */
+    static BatchMachine create(Machine machine) {
+        try {
+            return (BatchMachine) Class.forName(VECTOR_ENGINE)
+                .getDeclaredConstructor(Machine.class).newInstance(machine);
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return new BatchMachine(machine);
+        }
+    }
+
+    /**
+     * Return the number of messages I convert in lockstep.
+     */
+    int lanes() {
+        return LANES;
+    }
+
+    /**
+     * Return the results of converting MESSAGES[k] from rotor settings
+     * SETTINGS[k], each of numRotors()-1 characters as for
+     * Machine.setRotors, for every k.  MESSAGES must contain only
+     * characters in the alphabet.
+     */
+    String[] convert(String[] settings, String[] messages) {
+        if (settings.length != messages.length) {
+            throw error("%d settings for %d messages",
+                        settings.length, messages.length);
+        }
+        int[][] starts = new int[settings.length][];
+        int[][] texts = new int[messages.length][];
+        for (int k = 0; k < messages.length; k++) {
+            starts[k] = indices(settings[k]);
+            texts[k] = indices(messages[k]);
+        }
+        convert(starts, texts);
+        String[] result = new String[messages.length];
+        for (int k = 0; k < messages.length; k++) {
+            char[] chars = new char[texts[k].length];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = _alphabet.toChar(texts[k][i]);
+            }
+            result[k] = new String(chars);
+        }
+        return result;
+    }
+
+    /**
+     * Convert each MESSAGES[k], a message of indices in the alphabet,
+     * in place, from rotor settings STARTS[k], which gives the setting
+     * of each slot but the reflector's, from left to right.
+     */
+    void convert(int[][] starts, int[][] messages) {
+        if (starts.length != messages.length) {
+            throw error("%d settings for %d messages",
+                        starts.length, messages.length);
+        }
+        int slots = _rotates.length;
+        for (int k = 0; k < messages.length; k++) {
+            if (starts[k].length != slots - 1) {
+                throw error("settings %d have %d rotors, not %d",
+                            k, starts[k].length, slots - 1);
+            }
+            check(starts[k]);
+            check(messages[k]);
+        }
+        Integer[] order = new Integer[messages.length];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> messages[b].length - messages[a].length);
+        int lanes = lanes();
+        int[] posns = new int[slots * lanes];
+        for (int first = 0; first < order.length; first += lanes) {
+            int n = Math.min(lanes, order.length - first);
+            int steps = messages[order[first]].length;
+            int[] block = new int[steps * lanes];
+            Arrays.fill(posns, 0);
+            for (int l = 0; l < n; l++) {
+                int k = order[first + l];
+                posns[l] = _reflector;
+                for (int i = 1; i < slots; i++) {
+                    posns[i * lanes + l] = starts[k][i - 1];
+                }
+                for (int t = 0; t < messages[k].length; t++) {
+                    block[t * lanes + l] = messages[k][t];
+                }
+            }
+            convertGroup(posns, block, steps);
+            for (int l = 0; l < n; l++) {
+                int k = order[first + l];
+                for (int t = 0; t < messages[k].length; t++) {
+                    messages[k][t] = block[t * lanes + l];
+                }
+            }
+        }
+    }
+
+    /**
+     * Convert STEPS keystrokes of each of lanes() lanes in place.  The
+     * setting of slot I in lane L is POSNS[I * lanes() + L], and is left
+     * where the last keystroke puts it.  The character of keystroke T in
+     * lane L is BLOCK[T * lanes() + L].  Lanes holding messages shorter
+     * than STEPS are converted to the end all the same, and their extra
+     * results ignored.
+     */
+    void convertGroup(int[] posns, int[] block, int steps) {
+        int lanes = lanes();
+        int last = _rotates.length - 1;
+        for (int t = 0; t < steps; t++) {
+            for (int i = 0; i <= last; i++) {
+                if (!_rotates[i]) {
+                    continue;
+                }
+                boolean canDouble = i > 0 && _rotates[i - 1];
+                for (int l = 0; l < lanes; l++) {
+                    boolean carried = i == last
+                        || _notches[i + 1][posns[(i + 1) * lanes + l]] != 0;
+                    boolean doubleStep = !carried && canDouble
+                        && _notches[i][posns[i * lanes + l]] != 0;
+                    if (carried || doubleStep) {
+                        int p = posns[i * lanes + l] + 1;
+                        posns[i * lanes + l] = p == _size ? 0 : p;
+                    }
+                }
+            }
+            int base = t * lanes;
+            for (int l = 0; l < lanes; l++) {
+                block[base + l] = _plugboard[block[base + l]];
+            }
+            for (int i = last; i > 0; i--) {
+                pass(_forward[i], _rings[i], posns, i * lanes, block, base);
+            }
+            for (int i = 0; i <= last; i++) {
+                pass(_backward[i], _rings[i], posns, i * lanes, block, base);
+            }
+            for (int l = 0; l < lanes; l++) {
+                block[base + l] = _plugboard[block[base + l]];
+            }
+        }
+    }
+
+    /**
+     * Pass the characters of every lane, BLOCK[BASE ..], through a rotor
+     * with conversion table TABLE and alphabet ring RING whose setting in
+     * each lane is in POSNS[SLOT ..].
+     */
+    private void pass(int[] table, int ring, int[] posns, int slot,
+                      int[] block, int base) {
+        for (int l = 0; l < lanes(); l++) {
+            int offset = wrap(posns[slot + l] - ring);
+            block[base + l] = wrap(table[block[base + l] + offset] - offset);
+        }
+    }
+
+    /**
+     * Return the indices in my alphabet of the characters of S.
+     */
+    private int[] indices(String s) {
+        int[] result = new int[s.length()];
+        for (int i = 0; i < result.length; i++) {
+            char c = s.charAt(i);
+            if (!_alphabet.contains(c)) {
+                throw error("'%c' is not in the alphabet", c);
+            }
+            result[i] = _alphabet.toInt(c);
+        }
+        return result;
+    }
+
+    /**
+     * Check that every element of INDICES is in my alphabet's range.
+     */
+    private void check(int[] indices) {
+        for (int c : indices) {
+            if (c < 0 || c >= _size) {
+                throw error("%d is not in the alphabet", c);
+            }
+        }
+    }
+
+    /**
+     * Return P, which is in the range -size()..2*size()-1, modulo
+     * size().
+     */
+    private int wrap(int p) {
+        return p < 0 ? p + _size : p >= _size ? p - _size : p;
+    }
+
+    /**
+     * Return the size of my alphabet.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Return my number of rotor slots, counting the reflector.
+     */
+    int slots() {
+        return _rotates.length;
+    }
+
+    /**
+     * Return true iff the rotor in slot I moves.
+     */
+    boolean rotates(int i) {
+        return _rotates[i];
+    }
+
+    /**
+     * Return the alphabet ring of the rotor in slot I.
+     */
+    int ring(int i) {
+        return _rings[i];
+    }
+
+    /**
+     * Return the forward conversion table of the rotor in slot I: at
+     * C + OFFSET, for C and OFFSET in range, the result of converting C
+     * forward at offset OFFSET, plus OFFSET, modulo the alphabet size.
+     * Not to be modified.
+     */
+    int[] forward(int i) {
+        return _forward[i];
+    }
+
+    /**
+     * Return the backward conversion table of the rotor in slot I, laid
+     * out as for forward(I).  Not to be modified.
+     */
+    int[] backward(int i) {
+        return _backward[i];
+    }
+
+    /**
+     * Return a table that is 1 at each notch of the rotor in slot I and
+     * 0 elsewhere.  Not to be modified.
+     */
+    int[] notches(int i) {
+        return _notches[i];
+    }
+
+    /**
+     * Return my plugboard as a table.  Not to be modified.
+     */
+    int[] plugboard() {
+        return _plugboard;
+    }
+
+    /**
+     * Number of messages converted in lockstep by this class.
+     */
+    static final int LANES = 16;
+    /**
+     * Name of the class that converts with the Vector API.
+     */
+    private static final String VECTOR_ENGINE = "enigma.VectorBatchMachine";
+
+    /**
+     * My alphabet.
+     */
+    private final Alphabet _alphabet;
+    /**
+     * Size of my alphabet.
+     */
+    private final int _size;
+    /**
+     * Whether the rotor in each slot moves.
+     */
+    private final boolean[] _rotates;
+    /**
+     * Alphabet ring of the rotor in each slot.
+     */
+    private final int[] _rings;
+    /**
+     * Setting of my reflector.
+     */
+    private final int _reflector;
+    /**
+     * Forward conversion table of each slot, as returned by forward.
+     */
+    private final int[][] _forward;
+    /**
+     * Backward conversion table of each slot.
+     */
+    private final int[][] _backward;
+    /**
+     * Notch table of each slot, as returned by notches.
+     */
+    private final int[][] _notches;
+    /**
+     * My plugboard.
+     */
+    private final int[] _plugboard;
+
+}
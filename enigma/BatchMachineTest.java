@@ -0,0 +1,124 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static enigma.TestUtils.navalMachine;
+import static org.junit.Assert.assertEquals;
+
+/** The suite of all JUnit tests for the BatchMachine class.
+ *  @author Ryan Johnson
+ */
+public class BatchMachineTest {
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a machine over ABCDEF with a fixed rotor and three moving
+     *  rotors notched at most positions, so that they double step
+     *  often. */
+    private Machine steppingMachine() {
+        Alphabet a = new Alphabet("ABCDEF");
+        ArrayList<Rotor> allRotors = new ArrayList<Rotor>();
+        allRotors.add(new Reflector("R", new Permutation("(AB)(CD)(EF)", a)));
+        allRotors.add(new FixedRotor("F", new Permutation("(ACE)", a)));
+        allRotors.add(new MovingRotor("X", new Permutation("(ABCDEF)", a),
+                                      "ACE"));
+        allRotors.add(new MovingRotor("Y", new Permutation("(AF)(BD)", a),
+                                      "BCD"));
+        allRotors.add(new MovingRotor("Z", new Permutation("(BCF)", a),
+                                      "ABDF"));
+        Machine M = new Machine(a, 5, 3, allRotors);
+        M.insertRotors(new String[] {"R", "F", "X", "Y", "Z"});
+        M.setRotors("AAAA");
+        M.setMachineAlphabet("BAFC");
+        M.setPlugboard(new Permutation("(AD)", a));
+        return M;
+    }
+
+    /** Check that ENGINE, made from M, converts N random messages from
+     *  random settings as M does, using RANDOM. */
+    private void checkAgainst(Machine M, BatchMachine engine, int n,
+                              Random random) {
+        Alphabet a = M.alphabet();
+        String[] settings = new String[n];
+        String[] messages = new String[n];
+        for (int k = 0; k < n; k++) {
+            settings[k] = randomString(a, M.numRotors() - 1, random);
+            messages[k] = randomString(a, random.nextInt(80), random);
+        }
+        String[] results = engine.convert(settings, messages);
+        for (int k = 0; k < n; k++) {
+            M.setRotors(settings[k]);
+            assertEquals("message " + k, M.convert(messages[k]), results[k]);
+        }
+    }
+
+    /** Return a string of LEN random characters of A, using RANDOM. */
+    private String randomString(Alphabet a, int len, Random random) {
+        char[] chars = new char[len];
+        for (int i = 0; i < len; i++) {
+            chars[i] = a.toChar(random.nextInt(a.size()));
+        }
+        return new String(chars);
+    }
+
+    @Test
+    public void testMatchesMachine() {
+        Random random = new Random(20);
+        Machine naval = navalMachine("AAAA", "CQRA", "(AQ)(EP)(TZ)");
+        checkAgainst(naval, new BatchMachine(naval), 100, random);
+        Machine small = steppingMachine();
+        checkAgainst(small, new BatchMachine(small), 100, random);
+    }
+
+    @Test
+    public void testCreate() {
+        Random random = new Random(21);
+        Machine naval = navalMachine("AAAA", "CQRA", "(AQ)(EP)(TZ)");
+        checkAgainst(naval, BatchMachine.create(naval), 50, random);
+        Machine small = steppingMachine();
+        checkAgainst(small, BatchMachine.create(small), 50, random);
+    }
+
+    @Test
+    public void testKnownMessage() {
+        Machine M = navalMachine("AAAA", "CQRA", "(AQ)(EP)(TZ)");
+        M.setMachineAlphabet("AAAA");
+        M.setPlugboard(new Permutation("", M.alphabet()));
+        BatchMachine engine = new BatchMachine(M);
+        String[] results =
+            engine.convert(new String[] {"AXLE", "AXLE", "AXLE"},
+                           new String[] {"FROMHISSHOULDERHIAWATHA", "", "F"});
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW", results[0]);
+        assertEquals("", results[1]);
+        assertEquals("H", results[2]);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testShortSetting() {
+        Machine M = navalMachine("AAAA", "CQRA", "(AQ)(EP)(TZ)");
+        new BatchMachine(M).convert(new String[] {"AXL"},
+                                    new String[] {"ABC"});
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotInAlphabet() {
+        Machine M = navalMachine("AAAA", "CQRA", "(AQ)(EP)(TZ)");
+        new BatchMachine(M).convert(new String[] {"AXLE"},
+                                    new String[] {"AB C"});
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testRepeatedRotor() {
+        Machine M = navalMachine("AAAA", "CQRA", "(AQ)(EP)(TZ)");
+        M.insertRotors(new String[] {"B", "Beta", "III", "IV", "IV"});
+        new BatchMachine(M);
+    }
+}
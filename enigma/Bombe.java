@@ -0,0 +1,453 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * A search for the keys under which a crib (a piece of known plaintext)
+ * could have been enciphered as part of a ciphertext, after the manner
+ * of the Turing-Welchman Bombe.
+ *
+ * <p>Each crib letter P and its ciphertext letter C form an edge of the
+ * menu: if S is the substitution made by the rotors at that keystroke
+ * and the plugboard takes X to Y, then the plugboard takes C to S(Y)
+ * (and P to S of whatever C goes to).  For each wheel order and
+ * starting position, I hypothesise each partner for the most connected
+ * letter of the menu and follow these implications, rejecting the
+ * hypothesis as soon as some letter would need two partners.  Each
+ * hypothesis that survives is a Stop.
+ *
+ * <p>The substitutions come from a CompiledMachine's tables, and are
+ * kept for each position of the moving rotors, so that no keystroke is
+ * converted twice for one wheel order.  Wheel orders are divided among
+ * the threads of a ForkJoinPool, which balances them by work stealing.
+ *
+ * @author Ryan Johnson
+ */
+class Bombe {
+
+    /**
+     * A possible key found by a search.
+     */
+    static class Stop {
+
+        /**
+         * A stop with rotors named ROTORS (reflector first) starting at
+         * SETTING (as for Machine.setRotors) and plugboard pairs
+         * PLUGBOARD (as for Permutation).
+         */
+        Stop(String[] rotors, String setting, String plugboard) {
+            _rotors = rotors;
+            _setting = setting;
+            _plugboard = plugboard;
+        }
+
+        /**
+         * Return the names of my rotors, reflector first.
+         */
+        String[] rotors() {
+            return _rotors;
+        }
+
+        /**
+         * Return my starting rotor settings.
+         */
+        String setting() {
+            return _setting;
+        }
+
+        /**
+         * Return the plugboard pairs implied by the crib, as cycles.
+         * Letters not mentioned are unknown or plugged to themselves.
+         */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        @Override
+        public String toString() {
+            return String.join(" ", _rotors) + " " + _setting + " "
+                + _plugboard;
+        }
+
+        /**
+         * Names of my rotors.
+         */
+        private final String[] _rotors;
+        /**
+         * My starting settings.
+         */
+        private final String _setting;
+        /**
+         * My plugboard pairs.
+         */
+        private final String _plugboard;
+    }
+
+    /**
+     * A search among machines with alphabet ALPHA, NUMROTORS rotor
+     * slots, and PAWLS pawls, built from the rotors in ALLROTORS, for
+     * keys that encipher CRIB as the characters of CIPHERTEXT starting
+     * at OFFSET.  The rotors' alphabet rings are at RINGS (as for
+     * Machine.setMachineAlphabet).
+     */
+    Bombe(Alphabet alpha, int numRotors, int pawls,
+          Collection<Rotor> allRotors, String rings,
+          String ciphertext, String crib, int offset) {
+        if (offset < 0 || offset + crib.length() > ciphertext.length()) {
+            throw error("crib does not fit in ciphertext");
+        }
+        if (crib.isEmpty()) {
+            throw error("empty crib");
+        }
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _allRotors = new ArrayList<Rotor>(allRotors);
+        _rings = rings;
+        _offset = offset;
+        int size = alpha.size();
+        _from = new int[crib.length()];
+        _to = new int[crib.length()];
+        int[] degree = new int[size];
+        for (int i = 0; i < crib.length(); i++) {
+            _from[i] = alpha.toInt(crib.charAt(i));
+            _to[i] = alpha.toInt(ciphertext.charAt(offset + i));
+            if (_from[i] == _to[i]) {
+                throw error("crib letter '%c' enciphered as itself",
+                            crib.charAt(i));
+            }
+            degree[_from[i]] += 1;
+            degree[_to[i]] += 1;
+        }
+        _edges = new int[size][];
+        int test = 0;
+        for (int x = 0; x < size; x++) {
+            _edges[x] = new int[degree[x]];
+            degree[x] = 0;
+            if (_edges[x].length > _edges[test].length) {
+                test = x;
+            }
+        }
+        for (int i = 0; i < _from.length; i++) {
+            _edges[_from[i]][degree[_from[i]]++] = i;
+            _edges[_to[i]][degree[_to[i]]++] = i;
+        }
+        _test = test;
+        _orders = Machine.wheelOrders(allRotors, numRotors, pawls);
+        _threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Search on THREADS threads rather than on all available
+     * processors.
+     */
+    void setThreads(int threads) {
+        _threads = threads;
+    }
+
+    /**
+     * Return the number of wheel orders I search.
+     */
+    int wheelOrders() {
+        return _orders.size();
+    }
+
+    /**
+     * Return all stops, ordered by wheel order and then by starting
+     * setting.
+     */
+    List<Stop> search() {
+        ForkJoinPool pool = new ForkJoinPool(_threads);
+        try {
+            return pool.invoke(new Search(0, _orders.size()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The search of wheel orders _orders[LO .. HI-1], split in half
+     * until there is one order per task.
+     */
+    private class Search extends RecursiveTask<List<Stop>> {
+
+        /**
+         * A search of wheel orders LO .. HI-1.
+         */
+        Search(int lo, int hi) {
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected List<Stop> compute() {
+            if (_hi - _lo <= 1) {
+                return _hi == _lo ? new ArrayList<Stop>()
+                    : search(_orders.get(_lo));
+            }
+            int mid = (_lo + _hi) >>> 1;
+            Search left = new Search(_lo, mid);
+            left.fork();
+            List<Stop> stops = new Search(mid, _hi).compute();
+            List<Stop> result = left.join();
+            result.addAll(stops);
+            return result;
+        }
+
+        /**
+         * First wheel order to search.
+         */
+        private final int _lo;
+        /**
+         * End of the wheel orders to search.
+         */
+        private final int _hi;
+    }
+
+    /**
+     * Return the stops for wheel order ORDER, in order of starting
+     * setting.
+     */
+    private List<Stop> search(String[] order) {
+        CompiledMachine machine = new CompiledMachine(_alphabet, _numRotors,
+                _pawls, _allRotors, TABLE_CAPACITY);
+        machine.insertRotors(order);
+        machine.setMachineAlphabet(_rings);
+        machine.setPlugboard(new Permutation("", _alphabet));
+        int size = _alphabet.size();
+        int slots = _numRotors - 1;
+        long moving = 1;
+        for (int i = 0; i < _pawls; i++) {
+            moving *= size;
+        }
+        int[][] memo = moving <= MEMO_LIMIT ? new int[(int) moving][] : null;
+        int[][] scramblers = new int[_from.length][];
+        int[] plug = new int[size];
+        int[] queue = new int[size];
+        int[] start = new int[slots];
+        int[] rings = new int[slots];
+        for (int k = 0; k < slots; k++) {
+            rings[k] = _alphabet.toInt(machine.machineAlphabet().charAt(k));
+        }
+        ArrayList<Stop> stops = new ArrayList<Stop>();
+        do {
+            for (int k = 0; k < slots; k++) {
+                machine.setRotor(k + 1, start[k], rings[k]);
+            }
+            if (memo != null && movingPosition(start) == 0) {
+                Arrays.fill(memo, null);
+            }
+            for (int i = 0; i < _offset + _from.length; i++) {
+                machine.advance();
+                if (i >= _offset) {
+                    scramblers[i - _offset] = scrambler(machine, memo);
+                }
+            }
+            for (int v = 0; v < size; v++) {
+                if (consistent(scramblers, v, plug, queue)) {
+                    stops.add(new Stop(order, settingOf(start),
+                                       pairsOf(plug)));
+                }
+            }
+        } while (next(start));
+        return stops;
+    }
+
+    /**
+     * Return the substitution made by the rotors of MACHINE at their
+     * current positions, as a table, using the table in MEMO for the
+     * positions of the moving rotors if there is one.  MEMO is null if
+     * substitutions are not kept.
+     */
+    private int[] scrambler(CompiledMachine machine, int[][] memo) {
+        int key = 0;
+        if (memo != null) {
+            for (int k = _numRotors - _pawls; k < _numRotors; k++) {
+                key = key * _alphabet.size() + machine.setting(k);
+            }
+            if (memo[key] != null) {
+                return memo[key];
+            }
+        }
+        int[] table = new int[_alphabet.size()];
+        for (int c = 0; c < table.length; c++) {
+            table[c] = machine.substitute(c);
+        }
+        if (memo != null) {
+            memo[key] = table;
+        }
+        return table;
+    }
+
+    /**
+     * Return true iff the hypothesis that the plugboard takes the test
+     * letter to V is consistent with the menu, given the substitutions
+     * SCRAMBLERS for each crib position.  PLUG and QUEUE are work arrays
+     * of alphabet size.  On return, PLUG holds the partner deduced for
+     * each letter, or -1.
+     */
+    private boolean consistent(int[][] scramblers, int v, int[] plug,
+                               int[] queue) {
+        Arrays.fill(plug, -1);
+        int tail = assign(_test, v, plug, queue, 0);
+        if (tail < 0) {
+            return false;
+        }
+        for (int head = 0; head < tail; head++) {
+            int x = queue[head];
+            int y = plug[x];
+            for (int e : _edges[x]) {
+                int other = _from[e] == x ? _to[e] : _from[e];
+                tail = assign(other, scramblers[e][y], plug, queue, tail);
+                if (tail < 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Record in PLUG that the plugboard takes A to B and B to A, adding
+     * newly paired letters to QUEUE, whose first TAIL entries are in
+     * use.  Returns the new number of entries in QUEUE, or -1 if either
+     * letter already has a different partner.
+     */
+    private int assign(int a, int b, int[] plug, int[] queue, int tail) {
+        if (plug[a] == b) {
+            return tail;
+        }
+        if (plug[a] >= 0 || plug[b] >= 0) {
+            return -1;
+        }
+        plug[a] = b;
+        plug[b] = a;
+        queue[tail] = a;
+        tail += 1;
+        if (a != b) {
+            queue[tail] = b;
+            tail += 1;
+        }
+        return tail;
+    }
+
+    /**
+     * Return the position of the moving rotors in START, counting from
+     * 0 in the order of next.
+     */
+    private long movingPosition(int[] start) {
+        long result = 0;
+        for (int k = _numRotors - 1 - _pawls; k < start.length; k++) {
+            result = result * _alphabet.size() + start[k];
+        }
+        return result;
+    }
+
+    /**
+     * Advance START to the next combination of rotor settings, the
+     * rightmost varying fastest.  Returns false after the last.
+     */
+    private boolean next(int[] start) {
+        for (int k = start.length - 1; k >= 0; k--) {
+            start[k] += 1;
+            if (start[k] < _alphabet.size()) {
+                return true;
+            }
+            start[k] = 0;
+        }
+        return false;
+    }
+
+    /**
+     * Return START as a string of setting letters.
+     */
+    private String settingOf(int[] start) {
+        StringBuilder setting = new StringBuilder();
+        for (int posn : start) {
+            setting.append(_alphabet.toChar(posn));
+        }
+        return setting.toString();
+    }
+
+    /**
+     * Return the pairs of distinct letters in PLUG as cycles.
+     */
+    private String pairsOf(int[] plug) {
+        StringBuilder cycles = new StringBuilder();
+        for (int x = 0; x < plug.length; x++) {
+            if (x < plug[x]) {
+                cycles.append('(').append(_alphabet.toChar(x))
+                    .append(_alphabet.toChar(plug[x])).append(')');
+            }
+        }
+        return cycles.toString();
+    }
+
+    /**
+     * Number of inner tables kept by each CompiledMachine.
+     */
+    private static final int TABLE_CAPACITY = 1 << 10;
+    /**
+     * Largest number of positions of the moving rotors for which
+     * substitutions are kept.
+     */
+    private static final long MEMO_LIMIT = 1 << 16;
+
+    /**
+     * Alphabet of my machines.
+     */
+    private final Alphabet _alphabet;
+    /**
+     * Number of rotor slots.
+     */
+    private final int _numRotors;
+    /**
+     * Number of pawls.
+     */
+    private final int _pawls;
+    /**
+     * Rotors from which wheel orders are chosen.
+     */
+    private final ArrayList<Rotor> _allRotors;
+    /**
+     * Alphabet ring settings.
+     */
+    private final String _rings;
+    /**
+     * Position of the crib in the ciphertext.
+     */
+    private final int _offset;
+    /**
+     * Crib letters, by position in the crib.
+     */
+    private final int[] _from;
+    /**
+     * Ciphertext letters, by position in the crib.
+     */
+    private final int[] _to;
+    /**
+     * Positions in the crib at which each letter occurs, in either the
+     * crib or the ciphertext.
+     */
+    private final int[][] _edges;
+    /**
+     * The letter whose partner is hypothesised.
+     */
+    private final int _test;
+    /**
+     * Wheel orders to search, each reflector first.
+     */
+    private final List<String[]> _orders;
+    /**
+     * Number of threads searching.
+     */
+    private int _threads;
+
+}
@@ -0,0 +1,107 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.TestUtils.navalRotors;
+import static org.junit.Assert.*;
+
+/**
+ * The suite of all JUnit tests for the Bombe class.
+ *
+ * @author Ryan Johnson
+ */
+public class BombeTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /**
+     * Return the rotors B, I, III, and IV.
+     */
+    private ArrayList<Rotor> rotors() {
+        return navalRotors(new Alphabet(), "B", "I", "III", "IV");
+    }
+
+    /**
+     * Return MSG enciphered by a 3-slot machine with rotors ORDER at
+     * SETTING and plugboard PLUGBOARD.
+     */
+    private String encipher(String[] order, String setting,
+                            String plugboard, String msg) {
+        Machine M = new Machine(new Alphabet(), 3, 2, rotors());
+        M.insertRotors(order);
+        M.setRotors(setting);
+        M.setPlugboard(new Permutation(plugboard, new Alphabet()));
+        return M.convert(msg);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testFindsKey() {
+        String[] order = {"B", "IV", "I"};
+        String plugboard = "(AT)(EK)(MZ)(OR)";
+        String msg = "WETTERVORHERSAGEFUERDIEBISKAYAKEINEBESONDERHEITEN";
+        String cipher = encipher(order, "QD", plugboard, msg);
+        String crib = msg.substring(5, 30);
+        Bombe bombe = new Bombe(new Alphabet(), 3, 2, rotors(), "AA",
+                                cipher, crib, 5);
+        bombe.setThreads(2);
+        assertEquals(6, bombe.wheelOrders());
+        List<Bombe.Stop> stops = bombe.search();
+        boolean found = false;
+        for (Bombe.Stop stop : stops) {
+            if (String.join(" ", stop.rotors()).equals("B IV I")
+                    && stop.setting().equals("QD")) {
+                found = true;
+                String pairs = stop.plugboard();
+                for (int i = 0; i < pairs.length(); i += 4) {
+                    assertTrue(stop.toString(),
+                               plugboard.contains(pairs.substring(i, i + 4)));
+                }
+            }
+        }
+        assertTrue(found);
+        assertTrue(stops.size() < 10);
+    }
+
+    @Test
+    public void testStopsAreOrdered() {
+        String msg = "ANXNAVALHEADQUARTERSFROMTHEFLAGOFFICER";
+        String cipher = encipher(new String[] {"B", "III", "IV"}, "AZ",
+                                 "(QW)", msg);
+        Bombe bombe = new Bombe(new Alphabet(), 3, 2, rotors(), "AA",
+                                cipher, msg.substring(0, 12), 0);
+        List<Bombe.Stop> one = bombe.search();
+        bombe.setThreads(3);
+        List<Bombe.Stop> three = bombe.search();
+        assertEquals(one.toString(), three.toString());
+    }
+
+    @Test
+    public void testBadCribs() {
+        try {
+            new Bombe(new Alphabet(), 3, 2, rotors(), "AA", "ABC", "ABCD", 0);
+            fail("long crib accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        try {
+            new Bombe(new Alphabet(), 3, 2, rotors(), "AA", "ABC", "XB", 0);
+            fail("self-enciphered letter accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A Writer that encodes characters into a direct buffer and writes it
+ * to a channel in large blocks.
+ *
+ * @author Ryan Johnson
+ */
+class ChannelWriter extends Writer {
+
+    /**
+     * A writer to CHANNEL that encodes with CHARSET, buffering SIZE
+     * characters at a time.
+     */
+    ChannelWriter(WritableByteChannel channel, Charset charset, int size) {
+        _channel = channel;
+        _encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _chars = CharBuffer.allocate(size);
+        _bytes = ByteBuffer.allocateDirect(
+                (int) Math.ceil(size * _encoder.maxBytesPerChar()));
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, _chars.remaining());
+            _chars.put(cbuf, off, n);
+            off += n;
+            len -= n;
+            if (!_chars.hasRemaining()) {
+                encode(false);
+            }
+        }
+    }
+
+    /**
+     * Write the LEN bytes of B starting at OFF, which are already
+     * encoded, after the characters written so far.  An unpaired
+     * surrogate at the end of those characters is encoded as malformed.
+     */
+    void writeBytes(byte[] b, int off, int len) throws IOException {
+        encode(false);
+        if (_chars.position() > 0) {
+            encode(true);
+            while (_encoder.flush(_bytes).isOverflow()) {
+                drain();
+            }
+            _encoder.reset();
+        }
+        while (len > 0) {
+            int n = Math.min(len, _bytes.remaining());
+            _bytes.put(b, off, n);
+            off += n;
+            len -= n;
+            if (!_bytes.hasRemaining()) {
+                drain();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        encode(false);
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_channel.isOpen()) {
+            encode(true);
+            while (_encoder.flush(_bytes).isOverflow()) {
+                drain();
+            }
+            drain();
+            _channel.close();
+        }
+    }
+
+    /**
+     * Encode the buffered characters into _bytes, writing _bytes out
+     * whenever it fills.  ENDOFINPUT is true iff no more characters
+     * will follow.  An unpaired trailing surrogate is kept for the next
+     * call unless ENDOFINPUT.
+     */
+    private void encode(boolean endOfInput) throws IOException {
+        _chars.flip();
+        while (_encoder.encode(_chars, _bytes, endOfInput).isOverflow()) {
+            drain();
+        }
+        _chars.compact();
+    }
+
+    /**
+     * Write all of _bytes to _channel.
+     */
+    private void drain() throws IOException {
+        _bytes.flip();
+        while (_bytes.hasRemaining()) {
+            _channel.write(_bytes);
+        }
+        _bytes.clear();
+    }
+
+    /**
+     * Destination of my output.
+     */
+    private final WritableByteChannel _channel;
+    /**
+     * Encoder for my characters.
+     */
+    private final CharsetEncoder _encoder;
+    /**
+     * Characters written but not yet encoded.
+     */
+    private final CharBuffer _chars;
+    /**
+     * Encoded bytes not yet written to _channel.
+     */
+    private final ByteBuffer _bytes;
+
+}
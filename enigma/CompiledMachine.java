@@ -0,0 +1,184 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A machine that converts through precomputed tables.  While only the
+ * rightmost rotor moves, the path from that rotor's left side through
+ * the other rotors, the reflector, and back again is a fixed
+ * substitution.  I keep that substitution for each combination of
+ * positions of the other rotors in a table, so that converting a
+ * character takes two plugboard lookups, two conversions by the
+ * rightmost rotor, and one table lookup.  Tables are filled in as
+ * characters are converted and kept for the most recently used
+ * combinations.
+ *
+ * @author Ryan Johnson
+ */
+class CompiledMachine extends Machine {
+
+    /**
+     * A new machine as for Machine(ALPHA, NUMROTORS, PAWLS, ALLROTORS)
+     * that keeps the tables for at most CAPACITY combinations of rotor
+     * positions.
+     */
+    CompiledMachine(Alphabet alpha, int numRotors, int pawls,
+                    Collection<Rotor> allRotors, int capacity) {
+        super(alpha, numRotors, pawls, allRotors);
+        _capacity = capacity;
+        _inserted = new Rotor[0];
+        _tables = newTables();
+    }
+
+    /**
+     * A machine like ORIGINAL, sharing its available rotors and with the
+     * same table capacity, but with all its rotors at setting 0 with
+     * alphabet ring 0, no rotors inserted, and no tables.
+     */
+    CompiledMachine(CompiledMachine original) {
+        super(original);
+        _capacity = original._capacity;
+        _inserted = new Rotor[0];
+        _tables = newTables();
+    }
+
+    /**
+     * Return an empty map of tables that holds at most _capacity
+     * tables, dropping the least recently used.
+     */
+    private LinkedHashMap<Long, int[]> newTables() {
+        return new LinkedHashMap<Long, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, int[]> e) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    @Override
+    CompiledMachine copy() {
+        return new CompiledMachine(this);
+    }
+
+    /**
+     * Set my rotor slots as for Machine.insertRotors(ROTORS).  My tables
+     * are kept if the same rotors were inserted before.
+     */
+    @Override
+    void insertRotors(String[] rotors) {
+        super.insertRotors(rotors);
+        Rotor[] inserted = new Rotor[insertedRotors()];
+        for (int i = 0; i < inserted.length; i++) {
+            inserted[i] = rotor(i);
+        }
+        if (Arrays.equals(inserted, _inserted)) {
+            return;
+        }
+        _inserted = inserted;
+        _tables.clear();
+        _table = null;
+        _bits = 0;
+        if (inserted.length > 1) {
+            _bits = 32 - Integer.numberOfLeadingZeros(
+                inserted[0].size() - 1);
+            if (_bits * (inserted.length - 1) > Long.SIZE) {
+                _bits = 0;
+            }
+        }
+    }
+
+    @Override
+    int substitute(int c) {
+        if (_bits == 0) {
+            return super.substitute(c);
+        }
+        int last = _inserted.length - 1;
+        Rotor fast = _inserted[last];
+        int offset = offset(last);
+        int[] table = table();
+        int permutated = fast.convertForward(plugboard().permute(c), offset);
+        int result = table[permutated];
+        if (result < 0) {
+            result = table[permutated] = inner(permutated);
+        }
+        return plugboard().permute(fast.convertBackward(result, offset));
+    }
+
+    /**
+     * Return the table for the current positions of all but my
+     * rightmost rotor, creating it if necessary.  Entries not yet
+     * computed are -1.  The positions are looked at only when those
+     * rotors may have moved since the last call.
+     */
+    private int[] table() {
+        if (_table != null && moves() == _moves) {
+            return _table;
+        }
+        long key = 0;
+        for (int i = 0; i < _inserted.length - 1; i++) {
+            key = (key << _bits) | offset(i);
+        }
+        _moves = moves();
+        if (_table == null || key != _key) {
+            _table = _tables.get(key);
+            if (_table == null) {
+                _table = new int[_inserted[0].size()];
+                Arrays.fill(_table, -1);
+                _tables.put(key, _table);
+            }
+            _key = key;
+        }
+        return _table;
+    }
+
+    /**
+     * Return the conversion of P, as it leaves my rightmost rotor, back
+     * to that rotor through the others and the reflector.
+     */
+    private int inner(int p) {
+        int last = _inserted.length - 1;
+        for (int i = last - 1; i > 0; i--) {
+            p = _inserted[i].convertForward(p, offset(i));
+        }
+        for (int i = 0; i < last; i++) {
+            p = _inserted[i].convertBackward(p, offset(i));
+        }
+        return p;
+    }
+
+    /**
+     * Number of tables I keep.
+     */
+    private final int _capacity;
+    /**
+     * Tables by the packed offsets of all but my rightmost rotor, least
+     * recently used first.
+     */
+    private final LinkedHashMap<Long, int[]> _tables;
+    /**
+     * The rotors inserted in me, reflector first.
+     */
+    private Rotor[] _inserted;
+    /**
+     * Bits per rotor offset in a key, or 0 if I convert as an ordinary
+     * Machine because fewer than two rotors are inserted or the offsets
+     * do not fit in a long.
+     */
+    private int _bits;
+    /**
+     * The most recently used table, or null.
+     */
+    private int[] _table;
+    /**
+     * Key of _table.
+     */
+    private long _key;
+    /**
+     * Value of moves() when _key was last computed.
+     */
+    private long _moves;
+
+}
@@ -0,0 +1,345 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * A directory of compiled snapshots of parsed configuration files, so
+ * that a configuration read before need not be parsed again.  Each
+ * snapshot holds the alphabet, the numbers of rotor slots and pawls,
+ * and for each rotor its kind, name, wiring table, and notch mask.  It
+ * is named for the SHA-256 hash of the configuration's text, and is
+ * read through a memory mapping.  A snapshot that is truncated, has the
+ * wrong hash or checksum, or describes an impossible machine is
+ * ignored.
+ *
+ * @author Ryan Johnson
+ */
+class ConfigCache {
+
+    /**
+     * A parsed configuration: an alphabet, numbers of rotor slots and
+     * pawls, and the available rotors.
+     */
+    static class Config {
+
+        /**
+         * The configuration with alphabet ALPHABET, NUMROTORS rotor
+         * slots, PAWLS pawls, and available rotors ROTORS.
+         */
+        Config(Alphabet alphabet, int numRotors, int pawls,
+               List<Rotor> rotors) {
+            _alphabet = alphabet;
+            _numRotors = numRotors;
+            _pawls = pawls;
+            _rotors = Collections.unmodifiableList(rotors);
+        }
+
+        /**
+         * Return my alphabet.
+         */
+        Alphabet alphabet() {
+            return _alphabet;
+        }
+
+        /**
+         * Return my number of rotor slots.
+         */
+        int numRotors() {
+            return _numRotors;
+        }
+
+        /**
+         * Return my number of pawls.
+         */
+        int pawls() {
+            return _pawls;
+        }
+
+        /**
+         * Return my available rotors.
+         */
+        List<Rotor> rotors() {
+            return _rotors;
+        }
+
+        /**
+         * My alphabet.
+         */
+        private final Alphabet _alphabet;
+        /**
+         * My number of rotor slots.
+         */
+        private final int _numRotors;
+        /**
+         * My number of pawls.
+         */
+        private final int _pawls;
+        /**
+         * My available rotors.
+         */
+        private final List<Rotor> _rotors;
+    }
+
+    /**
+     * A cache keeping its snapshots in DIR, which is created when the
+     * first snapshot is stored.
+     */
+    ConfigCache(Path dir) {
+        _dir = dir;
+    }
+
+    /**
+     * Return the configuration whose text is TEXT from its snapshot, or
+     * null if there is no valid snapshot of it.
+     */
+    Config load(byte[] text) {
+        byte[] hash = hash(text);
+        Path file = _dir.resolve(name(hash));
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + Long.BYTES || size > MAX_SIZE) {
+                return null;
+            }
+            ByteBuffer snapshot =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return decode(snapshot, hash);
+        } catch (IOException | BufferUnderflowException
+                 | IllegalArgumentException | EnigmaException excp) {
+            return null;
+        }
+    }
+
+    /**
+     * Store a snapshot of CONFIG, the configuration whose text is TEXT.
+     * The snapshot is written to a temporary file and moved into place,
+     * so that a concurrent load sees either no snapshot or all of it.
+     * Failures are ignored, leaving the configuration to be parsed
+     * again next time.
+     */
+    void store(byte[] text, Config config) {
+        byte[] hash = hash(text);
+        Path temp = null;
+        try {
+            Files.createDirectories(_dir);
+            temp = Files.createTempFile(_dir, name(hash), ".tmp");
+            Files.write(temp, encode(config, hash));
+            Files.move(temp, _dir.resolve(name(hash)),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UnsupportedOperationException excp) {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException excp2) {
+                    /* Leave it. */
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the snapshot of CONFIG, whose text has hash HASH.
+     */
+    static byte[] encode(Config config, byte[] hash) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            Alphabet alpha = config.alphabet();
+            int size = alpha.size();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(hash);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeChar(alpha.toChar(i));
+            }
+            out.writeInt(config.numRotors());
+            out.writeInt(config.pawls());
+            out.writeInt(config.rotors().size());
+            for (Rotor rotor : config.rotors()) {
+                out.writeByte(rotor.reflecting() ? REFLECTOR
+                              : rotor.rotates() ? MOVING : FIXED);
+                out.writeInt(rotor.name().length());
+                out.writeChars(rotor.name());
+                Permutation perm = rotor.permutation();
+                for (int i = 0; i < size; i++) {
+                    out.writeInt(perm.permute(i));
+                }
+                if (rotor.rotates()) {
+                    for (int i = 0; i < size; i++) {
+                        out.writeByte(rotor.notchAt(i) ? 1 : 0);
+                    }
+                }
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        ByteBuffer result = ByteBuffer.allocate(bytes.size() + Long.BYTES);
+        result.put(bytes.toByteArray()).putLong(crc.getValue());
+        return result.array();
+    }
+
+    /**
+     * Return the configuration in SNAPSHOT, which must be of a text
+     * with hash HASH, or null if it is not.  Throws
+     * BufferUnderflowException or EnigmaException if SNAPSHOT is
+     * truncated or malformed.
+     */
+    static Config decode(ByteBuffer snapshot, byte[] hash) {
+        int end = snapshot.limit() - Long.BYTES;
+        if (end < HEADER_SIZE) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(snapshot.duplicate().limit(end));
+        if (crc.getValue() != snapshot.getLong(end)) {
+            return null;
+        }
+        snapshot.limit(end);
+        if (snapshot.getInt() != MAGIC || snapshot.getInt() != VERSION) {
+            return null;
+        }
+        byte[] stored = new byte[hash.length];
+        snapshot.get(stored);
+        if (!MessageDigest.isEqual(stored, hash)) {
+            return null;
+        }
+        int size = count(snapshot);
+        Alphabet alpha = new Alphabet(chars(snapshot, size));
+        int numRotors = snapshot.getInt();
+        int pawls = snapshot.getInt();
+        int n = count(snapshot);
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        for (int k = 0; k < n; k++) {
+            byte kind = snapshot.get();
+            String name = chars(snapshot, count(snapshot));
+            int[] forward = new int[size];
+            for (int i = 0; i < size; i++) {
+                forward[i] = snapshot.getInt();
+            }
+            Permutation perm = new Permutation(forward, alpha);
+            if (kind == MOVING) {
+                StringBuilder notches = new StringBuilder();
+                for (int i = 0; i < size; i++) {
+                    if (snapshot.get() != 0) {
+                        notches.append(alpha.toChar(i));
+                    }
+                }
+                rotors.add(new MovingRotor(name, perm, notches.toString()));
+            } else if (kind == FIXED) {
+                rotors.add(new FixedRotor(name, perm));
+            } else if (kind == REFLECTOR) {
+                rotors.add(new Reflector(name, perm));
+            } else {
+                throw error("bad rotor kind %d in snapshot", kind);
+            }
+        }
+        if (snapshot.hasRemaining()) {
+            throw error("trailing bytes in snapshot");
+        }
+        return new Config(alpha, numRotors, pawls, rotors);
+    }
+
+    /**
+     * Return the next int in SNAPSHOT, which must be a count that fits
+     * in the rest of SNAPSHOT.
+     */
+    private static int count(ByteBuffer snapshot) {
+        int count = snapshot.getInt();
+        if (count < 0 || count > snapshot.remaining()) {
+            throw error("bad count %d in snapshot", count);
+        }
+        return count;
+    }
+
+    /**
+     * Return the next LEN chars in SNAPSHOT as a String.
+     */
+    private static String chars(ByteBuffer snapshot, int len) {
+        char[] chars = new char[len];
+        snapshot.asCharBuffer().get(chars);
+        snapshot.position(snapshot.position() + 2 * len);
+        return new String(chars);
+    }
+
+    /**
+     * Return the SHA-256 hash of TEXT.
+     */
+    static byte[] hash(byte[] text) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
+    /**
+     * Return the name of the snapshot of a text with hash HASH.
+     */
+    private static String name(byte[] hash) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : hash) {
+            name.append(String.format("%02x", b));
+        }
+        return name.append(".snap").toString();
+    }
+
+    /**
+     * First int of every snapshot ("ENGS").
+     */
+    private static final int MAGIC = 0x454E4753;
+    /**
+     * Version of the snapshot layout.
+     */
+    private static final int VERSION = 1;
+    /**
+     * Size of the magic number, version, and hash.
+     */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + 32;
+    /**
+     * Largest snapshot read.
+     */
+    private static final long MAX_SIZE = 1 << 28;
+    /**
+     * Kind byte of a moving rotor.
+     */
+    private static final byte MOVING = 'M';
+    /**
+     * Kind byte of a rotor that neither moves nor reflects.
+     */
+    private static final byte FIXED = 'N';
+    /**
+     * Kind byte of a reflector.
+     */
+    private static final byte REFLECTOR = 'R';
+
+    /**
+     * Directory holding my snapshots.
+     */
+    private final Path _dir;
+
+}
@@ -0,0 +1,128 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static enigma.TestUtils.NAVALA;
+import static org.junit.Assert.*;
+
+/**
+ * The suite of all JUnit tests for the ConfigCache class.
+ *
+ * @author Ryan Johnson
+ */
+public class ConfigCacheTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /**
+     * Return a configuration with rotors B, Beta, I, and IV.
+     */
+    private ConfigCache.Config config() {
+        Alphabet a = new Alphabet();
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"), a)));
+        rotors.add(new FixedRotor("Beta",
+                new Permutation(NAVALA.get("Beta"), a)));
+        rotors.add(new MovingRotor("I",
+                new Permutation(NAVALA.get("I"), a), "Q"));
+        rotors.add(new MovingRotor("IV",
+                new Permutation(NAVALA.get("IV"), a), "JZ"));
+        return new ConfigCache.Config(a, 4, 2, rotors);
+    }
+
+    /**
+     * Return MSG converted by a machine with configuration CONFIG,
+     * rotors B, Beta, I, and IV at setting "AYP", and plugboard
+     * "(AQ)(EP)".
+     */
+    private String convert(ConfigCache.Config config, String msg) {
+        Machine M = new Machine(config.alphabet(), config.numRotors(),
+                                config.pawls(), config.rotors());
+        M.insertRotors(new String[] {"B", "Beta", "I", "IV"});
+        M.setRotors("AYP");
+        M.setPlugboard(new Permutation("(AQ)(EP)", config.alphabet()));
+        return M.convert(msg);
+    }
+
+    /**
+     * Delete DIR and everything in it.
+     */
+    private void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(f -> {
+                try {
+                    Files.delete(f);
+                } catch (IOException excp) {
+                    throw new UncheckedIOException(excp);
+                }
+            });
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRoundTrip() {
+        ConfigCache.Config config = config();
+        byte[] hash = ConfigCache.hash(new byte[] {1, 2, 3});
+        ConfigCache.Config copy = ConfigCache.decode(
+            ByteBuffer.wrap(ConfigCache.encode(config, hash)), hash);
+        assertEquals(config.alphabet().size(), copy.alphabet().size());
+        assertEquals(4, copy.numRotors());
+        assertEquals(2, copy.pawls());
+        assertEquals(4, copy.rotors().size());
+        assertTrue(copy.rotors().get(0).reflecting());
+        assertFalse(copy.rotors().get(1).rotates());
+        assertTrue(copy.rotors().get(3).notchAt(25));
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        assertEquals(convert(config, msg), convert(copy, msg));
+    }
+
+    @Test
+    public void testStoreAndLoad() throws IOException {
+        Path dir = Files.createTempDirectory("enigma-cache");
+        try {
+            Path cacheDir = dir.resolve("cache");
+            ConfigCache cache = new ConfigCache(cacheDir);
+            byte[] text = "some configuration".getBytes(StandardCharsets.UTF_8);
+            assertNull(cache.load(text));
+            cache.store(text, config());
+            ConfigCache.Config loaded = cache.load(text);
+            assertNotNull(loaded);
+            assertEquals("Beta", loaded.rotors().get(1).name());
+            assertNull(cache.load("other".getBytes(StandardCharsets.UTF_8)));
+
+            Path snapshot;
+            try (Stream<Path> files = Files.list(cacheDir)) {
+                snapshot = files.findFirst().get();
+            }
+            byte[] bytes = Files.readAllBytes(snapshot);
+            bytes[bytes.length / 2] ^= 1;
+            Files.write(snapshot, bytes);
+            assertNull(cache.load(text));
+            Files.write(snapshot, new byte[] {1, 2});
+            assertNull(cache.load(text));
+        } finally {
+            delete(dir);
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Formats converted message lines as Main prints them, in groups of five
+ * characters separated by spaces, with each line that has any
+ * characters followed by a line separator.  Each run of characters is
+ * converted straight into a reusable buffer in one call and then spread
+ * out into its groups in place, and the buffer is written to the writer
+ * behind it in one call at the end of each line, or when it fills.  A
+ * line may be converted in any number of pieces: the position in the
+ * current group is carried from one piece to the next, so the result
+ * is the same as converting the whole line at once.  The grouping
+ * itself (see spread) is shared with AsciiConverter, which formats
+ * lines held as bytes.
+ *
+ * @author Ryan Johnson
+ */
+class GroupWriter {
+
+    /**
+     * A writer formatting lines onto OUT.
+     */
+    GroupWriter(Writer out) {
+        _out = out;
+    }
+
+    /**
+     * Convert the LEN characters of IN starting at OFF using M, and add
+     * the results to the current line.  IN is not changed.
+     */
+    void convert(Machine M, char[] in, int off, int len)
+        throws IOException {
+        while (len > 0) {
+            int room = _buffer.length - _pos - NEWLINE.length;
+            int k = Math.min(len, (room - 1) * GROUP / (GROUP + 1));
+            if (k <= 0) {
+                flush();
+                continue;
+            }
+            M.convert(in, off, k, _buffer, _pos);
+            _pos += spread(_buffer, _pos, k, _column);
+            _column = (_column + k - 1) % GROUP + 1;
+            _lineLength += k;
+            off += k;
+            len -= k;
+        }
+    }
+
+    /**
+     * End the current line, writing out what remains of it followed by
+     * a line separator, unless it has no characters.  Return the number
+     * of characters in the line as printed, including its separator.
+     */
+    int endLine() throws IOException {
+        if (_lineLength == 0) {
+            return 0;
+        }
+        _pos += newLine(_buffer, _pos);
+        flush();
+        int printed = _lineLength + (_lineLength - 1) / GROUP
+            + NEWLINE.length;
+        _lineLength = 0;
+        _column = 0;
+        return printed;
+    }
+
+    /**
+     * Spread the N characters of BUFFER starting at POS into groups of
+     * GROUP separated by spaces, in place, as the continuation of a line
+     * whose current group already has COLUMN characters (0 <= COLUMN <=
+     * GROUP).  A space goes first iff COLUMN is GROUP.  BUFFER must have
+     * room for the spaces after the N characters.  Returns the number of
+     * positions the characters take up afterwards, spaces included.
+     */
+    static int spread(char[] buffer, int pos, int n, int column) {
+        if (n == 0) {
+            return 0;
+        }
+        int end = n;
+        while (end > 0) {
+            int start = Math.max(0, end - 1 - (column + end - 1) % GROUP);
+            int shift = (column + start) / GROUP;
+            if (shift > 0) {
+                System.arraycopy(buffer, pos + start,
+                                 buffer, pos + start + shift, end - start);
+                if ((column + start) % GROUP == 0) {
+                    buffer[pos + start + shift - 1] = ' ';
+                }
+            }
+            end = start;
+        }
+        return n + (column + n - 1) / GROUP;
+    }
+
+    /**
+     * As for spread(char[], POS, N, COLUMN), but for the N ASCII
+     * characters of BUFFER starting at POS.
+     */
+    static int spread(byte[] buffer, int pos, int n, int column) {
+        if (n == 0) {
+            return 0;
+        }
+        int end = n;
+        while (end > 0) {
+            int start = Math.max(0, end - 1 - (column + end - 1) % GROUP);
+            int shift = (column + start) / GROUP;
+            if (shift > 0) {
+                System.arraycopy(buffer, pos + start,
+                                 buffer, pos + start + shift, end - start);
+                if ((column + start) % GROUP == 0) {
+                    buffer[pos + start + shift - 1] = ' ';
+                }
+            }
+            end = start;
+        }
+        return n + (column + n - 1) / GROUP;
+    }
+
+    /**
+     * Put a line separator into BUFFER starting at POS, and return its
+     * length.
+     */
+    static int newLine(char[] buffer, int pos) {
+        System.arraycopy(NEWLINE, 0, buffer, pos, NEWLINE.length);
+        return NEWLINE.length;
+    }
+
+    /**
+     * Put a line separator, in ASCII, into BUFFER starting at POS, and
+     * return its length.
+     */
+    static int newLine(byte[] buffer, int pos) {
+        for (int i = 0; i < NEWLINE.length; i++) {
+            buffer[pos + i] = (byte) NEWLINE[i];
+        }
+        return NEWLINE.length;
+    }
+
+    /**
+     * Write out the characters formatted so far.
+     */
+    private void flush() throws IOException {
+        _out.write(_buffer, 0, _pos);
+        _pos = 0;
+    }
+
+    /**
+     * Number of characters in a group.
+     */
+    static final int GROUP = 5;
+
+    /**
+     * The platform line separator.
+     */
+    static final char[] NEWLINE = System.lineSeparator().toCharArray();
+
+    /**
+     * Size of _buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 12;
+
+    /**
+     * Destination of my output.
+     */
+    private final Writer _out;
+    /**
+     * Formatted characters not yet written to _out.
+     */
+    private final char[] _buffer = new char[BUFFER_SIZE];
+    /**
+     * Number of characters in _buffer.
+     */
+    private int _pos;
+    /**
+     * Number of characters in the current group of the current line.
+     */
+    private int _column;
+    /**
+     * Number of characters converted into the current line.
+     */
+    private int _lineLength;
+
+}
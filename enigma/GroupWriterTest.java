@@ -0,0 +1,118 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.TestUtils.navalMachine;
+import static org.junit.Assert.assertEquals;
+
+/** The suite of all JUnit tests for the GroupWriter class.
+ *  @author Ryan Johnson
+ */
+public class GroupWriterTest {
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return MSG in groups of five, followed by a line separator. */
+    private String grouped(String msg) {
+        return msg.replaceAll("(.{5})(?!$)", "$1 ") + System.lineSeparator();
+    }
+
+    /** Return MSG repeated N times. */
+    private String repeat(String msg, int n) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            result.append(msg);
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testWholeLine() throws IOException {
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        StringWriter out = new StringWriter();
+        GroupWriter groups = new GroupWriter(out);
+        char[] in = msg.toCharArray();
+        groups.convert(navalMachine("AXLE", null, PLUGBOARD), in, 0, in.length);
+        assertEquals(grouped(msg).length(), groups.endLine());
+        String expected = navalMachine("AXLE", null, PLUGBOARD).convert(msg);
+        assertEquals(grouped(expected), out.toString());
+        assertEquals(msg, new String(in));
+    }
+
+    @Test
+    public void testPieces() throws IOException {
+        String msg = repeat("FROMHISSHOULDERHIAWATHA", 400);
+        String expected =
+            grouped(navalMachine("AXLE", null, PLUGBOARD).convert(msg));
+        char[] in = msg.toCharArray();
+        for (int piece = 1; piece <= 13; piece++) {
+            StringWriter out = new StringWriter();
+            GroupWriter groups = new GroupWriter(out);
+            Machine M = navalMachine("AXLE", null, PLUGBOARD);
+            for (int i = 0; i < in.length; i += piece) {
+                groups.convert(M, in, i, Math.min(piece, in.length - i));
+            }
+            groups.endLine();
+            assertEquals("pieces of " + piece, expected, out.toString());
+        }
+    }
+
+    @Test
+    public void testLines() throws IOException {
+        StringWriter out = new StringWriter();
+        GroupWriter groups = new GroupWriter(out);
+        Machine M = navalMachine("AXLE", null, PLUGBOARD);
+        char[] in = "FROMHISSHOULDER".toCharArray();
+        groups.convert(M, in, 0, 7);
+        groups.endLine();
+        assertEquals(0, groups.endLine());
+        groups.convert(M, in, 7, 0);
+        assertEquals(0, groups.endLine());
+        groups.convert(M, in, 7, 8);
+        groups.endLine();
+        String converted = navalMachine("AXLE", null, PLUGBOARD)
+            .convert("FROMHISSHOULDER");
+        assertEquals(grouped(converted.substring(0, 7))
+                     + grouped(converted.substring(7)), out.toString());
+    }
+
+    @Test
+    public void testSpread() {
+        char[] chars = "ABCDEFGHIJKL......".toCharArray();
+        assertEquals(14, GroupWriter.spread(chars, 0, 12, 0));
+        assertEquals("ABCDE FGHIJ KL", new String(chars, 0, 14));
+        chars = "-ABCDEFG...".toCharArray();
+        assertEquals(8, GroupWriter.spread(chars, 1, 7, 3));
+        assertEquals("-AB CDEFG", new String(chars, 0, 9));
+        byte[] bytes = "ABCDEF...".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(8, GroupWriter.spread(bytes, 0, 6, 5));
+        assertEquals(" ABCDE F",
+                     new String(bytes, 0, 8, StandardCharsets.US_ASCII));
+        assertEquals(0, GroupWriter.spread(bytes, 0, 0, 5));
+    }
+
+    @Test
+    public void testNewLine() {
+        String sep = System.lineSeparator();
+        char[] chars = new char[1 + sep.length()];
+        assertEquals(sep.length(), GroupWriter.newLine(chars, 1));
+        assertEquals(sep, new String(chars, 1, sep.length()));
+        byte[] bytes = new byte[1 + sep.length()];
+        assertEquals(sep.length(), GroupWriter.newLine(bytes, 1));
+        assertEquals(sep, new String(bytes, 1, sep.length(),
+                                     StandardCharsets.US_ASCII));
+    }
+
+    /** The plugboard of carroll.in. */
+    private static final String PLUGBOARD = "(HQ) (EX) (IP) (TR) (BY)";
+
+}
@@ -0,0 +1,611 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * A ciphertext-only search for the key of a message.  First, every
+ * wheel order and starting setting is tried with no plugboard and the
+ * alphabet rings at 0, and the settings whose decryptions have the
+ * highest index of coincidence are kept.  Then, for each of those, the
+ * alphabet rings of the moving rotors are adjusted (keeping the
+ * rotors' wiring in place) and plugboard pairs are added and removed
+ * one at a time, keeping each change that improves the n-gram score
+ * of the decryption, until no change does.
+ *
+ * <p>Decryptions go into reused int arrays.  While the plugboard is
+ * being adjusted, the rotors' substitution at each position of the
+ * message is held in a table, so that a trial decryption is three
+ * lookups per character.  The wheel orders, and then the settings
+ * kept, are divided among the threads of a ForkJoinPool.  Progress and
+ * the best key so far may be read from other threads during a search.
+ *
+ * @author Ryan Johnson
+ */
+class HillClimber {
+
+    /**
+     * A key found by a search.
+     */
+    static class Key {
+
+        /**
+         * A key with rotors named ROTORS (reflector first) starting at
+         * SETTING with alphabet rings RINGS and plugboard PLUGBOARD, all
+         * as for Machine, whose decryption scored SCORE.
+         */
+        Key(String[] rotors, String setting, String rings,
+            String plugboard, double score) {
+            _rotors = rotors;
+            _setting = setting;
+            _rings = rings;
+            _plugboard = plugboard;
+            _score = score;
+        }
+
+        /**
+         * Return the names of my rotors, reflector first.
+         */
+        String[] rotors() {
+            return _rotors;
+        }
+
+        /**
+         * Return my starting rotor settings.
+         */
+        String setting() {
+            return _setting;
+        }
+
+        /**
+         * Return my alphabet ring settings.
+         */
+        String rings() {
+            return _rings;
+        }
+
+        /**
+         * Return my plugboard, as cycles.
+         */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /**
+         * Return the n-gram score of my decryption.
+         */
+        double score() {
+            return _score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s %s (%.1f)",
+                                 String.join(" ", _rotors), _setting,
+                                 _rings, _plugboard, _score);
+        }
+
+        /**
+         * Names of my rotors.
+         */
+        private final String[] _rotors;
+        /**
+         * My starting settings.
+         */
+        private final String _setting;
+        /**
+         * My alphabet rings.
+         */
+        private final String _rings;
+        /**
+         * My plugboard.
+         */
+        private final String _plugboard;
+        /**
+         * My score.
+         */
+        private final double _score;
+    }
+
+    /**
+     * A search among machines with alphabet ALPHA, NUMROTORS rotor
+     * slots, and PAWLS pawls, built from the rotors in ALLROTORS, for
+     * the key of CIPHERTEXT, scoring decryptions with NGRAMS.
+     */
+    HillClimber(Alphabet alpha, int numRotors, int pawls,
+                Collection<Rotor> allRotors, String ciphertext,
+                NGrams ngrams) {
+        if (ciphertext.length() < ngrams.n()) {
+            throw error("ciphertext too short");
+        }
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _allRotors = new ArrayList<Rotor>(allRotors);
+        _ngrams = ngrams;
+        _cipher = new int[ciphertext.length()];
+        for (int i = 0; i < _cipher.length; i++) {
+            if (!alpha.contains(ciphertext.charAt(i))) {
+                throw error("'%c' is not in the alphabet",
+                            ciphertext.charAt(i));
+            }
+            _cipher[i] = alpha.toInt(ciphertext.charAt(i));
+        }
+        _orders = Machine.wheelOrders(allRotors, numRotors, pawls);
+        _threads = Runtime.getRuntime().availableProcessors();
+        _candidates = DEFAULT_CANDIDATES;
+    }
+
+    /**
+     * Search on THREADS threads rather than on all available
+     * processors.
+     */
+    void setThreads(int threads) {
+        _threads = threads;
+    }
+
+    /**
+     * Climb from the best COUNT settings found by index of coincidence,
+     * rather than the default number.
+     */
+    void setCandidates(int count) {
+        _candidates = count;
+    }
+
+    /**
+     * Return the fraction of the current or last search done.
+     */
+    double progress() {
+        int total = _orders.size() + _candidates;
+        return Math.min(1.0, (double) _done.get() / total);
+    }
+
+    /**
+     * Return the best key found so far by the current or last search,
+     * or null if there is none yet.
+     */
+    Key best() {
+        return _best.get();
+    }
+
+    /**
+     * Return the best key for my ciphertext.
+     */
+    Key search() {
+        _done.set(0);
+        _best.set(null);
+        ForkJoinPool pool = new ForkJoinPool(_threads);
+        try {
+            List<Candidate> found =
+                pool.invoke(new Survey(0, _orders.size()));
+            found.sort(Comparator.comparingDouble(c -> -c._score));
+            List<Candidate> kept =
+                found.subList(0, Math.min(_candidates, found.size()));
+            _done.set(_orders.size() + _candidates - kept.size());
+            pool.invoke(new Climb(kept, 0, kept.size()));
+            return _best.get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * A starting point for climbing: a wheel order, settings, and
+     * alphabet rings, with the score that ranked it.
+     */
+    private static class Candidate {
+
+        /**
+         * A candidate with wheel order ORDER, settings START, and rings
+         * RINGS (the last two as indices for slots 1 ..), scoring SCORE.
+         */
+        Candidate(String[] order, int[] start, int[] rings, double score) {
+            _order = order;
+            _start = start;
+            _rings = rings;
+            _score = score;
+        }
+
+        /**
+         * Rotor names, reflector first.
+         */
+        private final String[] _order;
+        /**
+         * Rotor settings.
+         */
+        private final int[] _start;
+        /**
+         * Alphabet rings.
+         */
+        private final int[] _rings;
+        /**
+         * Index of coincidence of the decryption.
+         */
+        private final double _score;
+    }
+
+    /**
+     * The survey by index of coincidence of wheel orders
+     * _orders[LO .. HI-1], split in half until there is one order per
+     * task.
+     */
+    private class Survey extends RecursiveTask<List<Candidate>> {
+
+        /**
+         * A survey of wheel orders LO .. HI-1.
+         */
+        Survey(int lo, int hi) {
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected List<Candidate> compute() {
+            if (_hi - _lo <= 1) {
+                List<Candidate> result = new ArrayList<Candidate>();
+                if (_hi > _lo) {
+                    result.addAll(survey(_orders.get(_lo)));
+                    _done.incrementAndGet();
+                }
+                return result;
+            }
+            int mid = (_lo + _hi) >>> 1;
+            Survey left = new Survey(_lo, mid);
+            left.fork();
+            List<Candidate> right = new Survey(mid, _hi).compute();
+            List<Candidate> result = left.join();
+            result.addAll(right);
+            return result;
+        }
+
+        /**
+         * First wheel order to survey.
+         */
+        private final int _lo;
+        /**
+         * End of the wheel orders to survey.
+         */
+        private final int _hi;
+    }
+
+    /**
+     * The climbs from CANDIDATES[LO .. HI-1], split in half until there
+     * is one candidate per task.
+     */
+    private class Climb extends RecursiveTask<Void> {
+
+        /**
+         * Climbs from candidates LO .. HI-1 of CANDIDATES.
+         */
+        Climb(List<Candidate> candidates, int lo, int hi) {
+            _list = candidates;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected Void compute() {
+            if (_hi - _lo <= 1) {
+                if (_hi > _lo) {
+                    offer(climb(_list.get(_lo)));
+                    _done.incrementAndGet();
+                }
+                return null;
+            }
+            int mid = (_lo + _hi) >>> 1;
+            invokeAll(new Climb(_list, _lo, mid), new Climb(_list, mid, _hi));
+            return null;
+        }
+
+        /**
+         * Candidates to climb from.
+         */
+        private final List<Candidate> _list;
+        /**
+         * First candidate to climb from.
+         */
+        private final int _lo;
+        /**
+         * End of the candidates to climb from.
+         */
+        private final int _hi;
+    }
+
+    /**
+     * Return the best _candidates settings for wheel order ORDER, with
+     * alphabet rings at 0, by index of coincidence.
+     */
+    private List<Candidate> survey(String[] order) {
+        CompiledMachine machine = machine(order);
+        int slots = _numRotors - 1;
+        int[] start = new int[slots];
+        int[] rings = new int[slots];
+        int[] counts = new int[_alphabet.size()];
+        ArrayList<Candidate> kept = new ArrayList<Candidate>();
+        double worst = Double.NEGATIVE_INFINITY;
+        do {
+            double score = coincidence(machine, start, rings, counts);
+            if (kept.size() < _candidates || score > worst) {
+                kept.add(new Candidate(order, start.clone(), rings, score));
+                if (kept.size() > _candidates) {
+                    kept.sort(Comparator.comparingDouble(c -> -c._score));
+                    kept.remove(kept.size() - 1);
+                    worst = kept.get(kept.size() - 1)._score;
+                }
+            }
+        } while (next(start));
+        return kept;
+    }
+
+    /**
+     * Return the best key reachable from CANDIDATE by adjusting its
+     * alphabet rings and then its plugboard.
+     */
+    private Key climb(Candidate candidate) {
+        CompiledMachine machine = machine(candidate._order);
+        int size = _alphabet.size();
+        int[] start = candidate._start.clone();
+        int[] rings = candidate._rings.clone();
+        int[] counts = new int[size];
+        double best = coincidence(machine, start, rings, counts);
+        for (int k = _numRotors - 1 - _pawls; k < rings.length; k++) {
+            int[] trialStart = start.clone();
+            int[] trialRings = rings.clone();
+            int ring = rings[k], setting = start[k];
+            for (int r = 1; r < size; r++) {
+                trialRings[k] = (ring + r) % size;
+                trialStart[k] = (setting + r) % size;
+                double score =
+                    coincidence(machine, trialStart, trialRings, counts);
+                if (score > best) {
+                    best = score;
+                    start = trialStart.clone();
+                    rings = trialRings.clone();
+                }
+            }
+        }
+        int[] scramblers = new int[_cipher.length * size];
+        tabulate(machine, start, rings, scramblers);
+        int[] plug = new int[size];
+        for (int x = 0; x < size; x++) {
+            plug[x] = x;
+        }
+        int[] text = new int[_cipher.length];
+        double score = decrypt(scramblers, plug, text);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int a = 0; a < size; a++) {
+                for (int b = a + 1; b < size; b++) {
+                    int oldA = plug[a], oldB = plug[b];
+                    swap(plug, a, b);
+                    double trial = decrypt(scramblers, plug, text);
+                    if (trial > score) {
+                        score = trial;
+                        improved = true;
+                    } else {
+                        unswap(plug, a, b, oldA, oldB);
+                    }
+                }
+            }
+        }
+        return new Key(candidate._order, letters(start), letters(rings),
+                       cycles(plug), score);
+    }
+
+    /**
+     * Return a CompiledMachine with rotors ORDER inserted and no
+     * plugboard.
+     */
+    private CompiledMachine machine(String[] order) {
+        CompiledMachine machine = new CompiledMachine(_alphabet,
+                _numRotors, _pawls, _allRotors, TABLE_CAPACITY);
+        machine.insertRotors(order);
+        machine.setPlugboard(new Permutation("", _alphabet));
+        return machine;
+    }
+
+    /**
+     * Set the rotors of MACHINE to settings START and alphabet rings
+     * RINGS.
+     */
+    private void set(CompiledMachine machine, int[] start, int[] rings) {
+        for (int k = 0; k < start.length; k++) {
+            machine.setRotor(k + 1, start[k], rings[k]);
+        }
+    }
+
+    /**
+     * Return the index of coincidence of my ciphertext decrypted by
+     * MACHINE from settings START with rings RINGS and no plugboard.
+     * COUNTS is a work array of alphabet size.
+     */
+    private double coincidence(CompiledMachine machine, int[] start,
+                               int[] rings, int[] counts) {
+        set(machine, start, rings);
+        Arrays.fill(counts, 0);
+        for (int c : _cipher) {
+            machine.advance();
+            counts[machine.substitute(c)] += 1;
+        }
+        long sum = 0;
+        for (int n : counts) {
+            sum += (long) n * (n - 1);
+        }
+        long len = _cipher.length;
+        return (double) sum / (len * (len - 1));
+    }
+
+    /**
+     * Fill SCRAMBLERS with the substitution made by the rotors of
+     * MACHINE at each keystroke of my ciphertext, from settings START
+     * with rings RINGS, one row of alphabet size per keystroke.
+     */
+    private void tabulate(CompiledMachine machine, int[] start, int[] rings,
+                          int[] scramblers) {
+        int size = _alphabet.size();
+        set(machine, start, rings);
+        for (int i = 0; i < _cipher.length; i++) {
+            machine.advance();
+            for (int c = 0; c < size; c++) {
+                scramblers[i * size + c] = machine.substitute(c);
+            }
+        }
+    }
+
+    /**
+     * Decrypt my ciphertext into TEXT using the rotor substitutions in
+     * SCRAMBLERS and the plugboard PLUG, and return its n-gram score.
+     */
+    private double decrypt(int[] scramblers, int[] plug, int[] text) {
+        int size = _alphabet.size();
+        for (int i = 0; i < _cipher.length; i++) {
+            text[i] = plug[scramblers[i * size + plug[_cipher[i]]]];
+        }
+        return _ngrams.score(text, text.length);
+    }
+
+    /**
+     * Change the plugboard PLUG so that A and B are paired, unpairing
+     * them first from any other partners, or unpair them if they are
+     * already paired.
+     */
+    private static void swap(int[] plug, int a, int b) {
+        if (plug[a] == b) {
+            plug[a] = a;
+            plug[b] = b;
+            return;
+        }
+        plug[plug[a]] = plug[a];
+        plug[plug[b]] = plug[b];
+        plug[a] = b;
+        plug[b] = a;
+    }
+
+    /**
+     * Undo swap(PLUG, A, B), where A and B had partners OLDA and OLDB
+     * before it.
+     */
+    private static void unswap(int[] plug, int a, int b, int oldA,
+                               int oldB) {
+        plug[a] = a;
+        plug[b] = b;
+        plug[oldA] = a;
+        plug[a] = oldA;
+        plug[oldB] = b;
+        plug[b] = oldB;
+    }
+
+    /**
+     * Record KEY as the best so far if it is.
+     */
+    private void offer(Key key) {
+        _best.accumulateAndGet(key, (old, now) ->
+            old == null || now._score > old._score ? now : old);
+    }
+
+    /**
+     * Advance START to the next combination of rotor settings, the
+     * rightmost varying fastest.  Returns false after the last.
+     */
+    private boolean next(int[] start) {
+        for (int k = start.length - 1; k >= 0; k--) {
+            start[k] += 1;
+            if (start[k] < _alphabet.size()) {
+                return true;
+            }
+            start[k] = 0;
+        }
+        return false;
+    }
+
+    /**
+     * Return POSNS as a string of letters.
+     */
+    private String letters(int[] posns) {
+        StringBuilder result = new StringBuilder();
+        for (int posn : posns) {
+            result.append(_alphabet.toChar(posn));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Return the pairs of distinct letters in PLUG as cycles.
+     */
+    private String cycles(int[] plug) {
+        StringBuilder result = new StringBuilder();
+        for (int x = 0; x < plug.length; x++) {
+            if (x < plug[x]) {
+                result.append('(').append(_alphabet.toChar(x))
+                    .append(_alphabet.toChar(plug[x])).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Default number of settings climbed from.
+     */
+    private static final int DEFAULT_CANDIDATES = 8;
+    /**
+     * Number of inner tables kept by each CompiledMachine.
+     */
+    private static final int TABLE_CAPACITY = 1 << 10;
+
+    /**
+     * Alphabet of my machines.
+     */
+    private final Alphabet _alphabet;
+    /**
+     * Number of rotor slots.
+     */
+    private final int _numRotors;
+    /**
+     * Number of pawls.
+     */
+    private final int _pawls;
+    /**
+     * Rotors from which wheel orders are chosen.
+     */
+    private final ArrayList<Rotor> _allRotors;
+    /**
+     * Scores for decryptions.
+     */
+    private final NGrams _ngrams;
+    /**
+     * The ciphertext, as indices.
+     */
+    private final int[] _cipher;
+    /**
+     * Wheel orders to search, each reflector first.
+     */
+    private final List<String[]> _orders;
+    /**
+     * Number of threads searching.
+     */
+    private int _threads;
+    /**
+     * Number of settings climbed from.
+     */
+    private int _candidates;
+    /**
+     * Number of wheel orders surveyed plus candidates climbed from in
+     * the current search.
+     */
+    private final AtomicInteger _done = new AtomicInteger();
+    /**
+     * Best key found in the current search.
+     */
+    private final AtomicReference<Key> _best = new AtomicReference<Key>();
+
+}
@@ -0,0 +1,125 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import static enigma.TestUtils.navalRotors;
+import static org.junit.Assert.*;
+
+/**
+ * The suite of all JUnit tests for the HillClimber and NGrams classes.
+ *
+ * @author Ryan Johnson
+ */
+public class HillClimberTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /**
+     * English text for training n-grams.
+     */
+    private static final String TRAINING =
+        "IT WAS THE BEST OF TIMES IT WAS THE WORST OF TIMES IT WAS THE "
+        + "AGE OF WISDOM IT WAS THE AGE OF FOOLISHNESS IT WAS THE EPOCH "
+        + "OF BELIEF IT WAS THE EPOCH OF INCREDULITY IT WAS THE SEASON OF "
+        + "LIGHT IT WAS THE SEASON OF DARKNESS IT WAS THE SPRING OF HOPE "
+        + "IT WAS THE WINTER OF DESPAIR WE HAD EVERYTHING BEFORE US WE "
+        + "HAD NOTHING BEFORE US WE WERE ALL GOING DIRECT TO HEAVEN WE "
+        + "WERE ALL GOING DIRECT THE OTHER WAY IN SHORT THE PERIOD WAS SO "
+        + "FAR LIKE THE PRESENT PERIOD THAT SOME OF ITS NOISIEST "
+        + "AUTHORITIES INSISTED ON ITS BEING RECEIVED FOR GOOD OR FOR "
+        + "EVIL IN THE SUPERLATIVE DEGREE OF COMPARISON ONLY THERE WERE "
+        + "A KING WITH A LARGE JAW AND A QUEEN WITH A PLAIN FACE ON THE "
+        + "THRONE OF ENGLAND THERE WERE A KING WITH A LARGE JAW AND A "
+        + "QUEEN WITH A FAIR FACE ON THE THRONE OF FRANCE IN BOTH "
+        + "COUNTRIES IT WAS CLEARER THAN CRYSTAL TO THE LORDS OF THE "
+        + "STATE PRESERVES OF LOAVES AND FISHES THAT THINGS IN GENERAL "
+        + "WERE SETTLED FOR EVER THE WEATHER REPORT FOR THE NORTHERN "
+        + "SECTOR IS AS FOLLOWS THE WIND IS FROM THE WEST AND THE SEA IS "
+        + "CALM THERE IS NO SIGN OF THE ENEMY AND ALL SHIPS ARE TO "
+        + "REMAIN IN THEIR POSITIONS UNTIL FURTHER ORDERS ARE RECEIVED "
+        + "FROM THE COMMANDER OF THE FLEET WHO WILL SEND THEM AT THE "
+        + "USUAL TIME IN THE MORNING THE CONVOY WILL PASS THROUGH THE "
+        + "CHANNEL AT NIGHT AND THE ESCORTS WILL STAY WITH IT UNTIL IT "
+        + "REACHES THE HARBOUR WHERE IT WILL BE MET BY THE SHIPS OF THE "
+        + "SECOND SQUADRON WHICH HAVE BEEN WAITING THERE FOR SOME DAYS";
+
+    /**
+     * A message to encipher.
+     */
+    private static final String MESSAGE =
+        "THEWEATHERINTHENORTHERNSECTORWILLBECALMTHROUGHTHEMORNINGAND"
+        + "THECONVOYISTOREMAININITSPOSITIONUNTILTHECOMMANDEROFTHEFLEET"
+        + "SENDSFURTHERORDERSTHEESCORTSWILLSTAYWITHTHESHIPSOFTHESECOND"
+        + "SQUADRONANDALLOFTHEMWILLPASSTHROUGHTHECHANNELATNIGHTWHERE"
+        + "THEREISNOSIGNOFTHEENEMYTHEHARBOURISCLEAR";
+
+    /**
+     * Return the rotors B, I, III, and IV.
+     */
+    private ArrayList<Rotor> rotors() {
+        return navalRotors(new Alphabet(), "B", "I", "III", "IV");
+    }
+
+    /**
+     * Return MSG converted by a 3-slot machine with rotors ORDER at
+     * SETTING with alphabet rings RINGS and plugboard PLUGBOARD.
+     */
+    private String convert(String[] order, String setting, String rings,
+                           String plugboard, String msg) {
+        Machine M = new Machine(new Alphabet(), 3, 2, rotors());
+        M.insertRotors(order);
+        M.setRotors(setting);
+        M.setMachineAlphabet(rings);
+        M.setPlugboard(new Permutation(plugboard, new Alphabet()));
+        return M.convert(msg);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testScores() {
+        Alphabet a = new Alphabet();
+        NGrams tri = NGrams.train(a, 3, TRAINING);
+        assertEquals(3, tri.n());
+        int[] english = {19, 7, 4, 18, 4, 0};
+        int[] noise = {16, 25, 23, 9, 16, 25};
+        assertTrue(tri.score(english, 6) > tri.score(noise, 6));
+        NGrams read = new NGrams(a, 2, new StringReader("TH 10\nHE 5\n\n"));
+        assertTrue(read.score(new int[] {19, 7}, 2)
+                   > read.score(new int[] {7, 4}, 2));
+        assertEquals(read.score(new int[] {0, 0}, 2),
+                     read.score(new int[] {25, 25}, 2), 1e-6);
+        try {
+            new NGrams(a, 2, new StringReader("THE 10\n"));
+            fail("bad count accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testRecoversMessage() {
+        String[] order = {"B", "III", "I"};
+        String cipher = convert(order, "KQ", "AF", "(AZ)(ST)", MESSAGE);
+        HillClimber climber = new HillClimber(new Alphabet(), 3, 2,
+                rotors(), cipher, NGrams.train(new Alphabet(), 3, TRAINING));
+        climber.setThreads(2);
+        HillClimber.Key key = climber.search();
+        assertEquals(1.0, climber.progress(), 1e-9);
+        assertSame(key, climber.best());
+        assertEquals(MESSAGE, convert(key.rotors(), key.setting(),
+                                      key.rings(), key.plugboard(), cipher));
+    }
+
+}
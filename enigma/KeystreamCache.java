@@ -0,0 +1,150 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * The first keystrokes of the keystreams of recently used machine
+ * settings, shared between machines.  An entry is keyed by the rotors
+ * inserted, in order, and their settings and alphabet rings, and holds
+ * one row of conversions, without the plugboard, for each of the first
+ * length() keystrokes from those settings.  Since the plugboard is
+ * applied around a row, not baked into it, settings that differ only
+ * in their plugboards share an entry.  Entries are dropped, least
+ * recently used first, to keep the total size of the rows within a
+ * budget.  A cache may be used by several threads at once.
+ *
+ * @author Ryan Johnson
+ */
+class KeystreamCache {
+
+    /**
+     * A cache of keystreams of LENGTH keystrokes holding at most BUDGET
+     * ints of rows in all.
+     */
+    KeystreamCache(int length, long budget) {
+        if (length <= 0) {
+            throw error("bad keystream length: %d", length);
+        }
+        _length = length;
+        _budget = budget;
+    }
+
+    /**
+     * Return the number of keystrokes in each of my keystreams.
+     */
+    int length() {
+        return _length;
+    }
+
+    /**
+     * Return true iff a keystream of mine from an alphabet of SIZE
+     * characters fits within my budget, so that it can be recorded.
+     */
+    boolean fits(int size) {
+        return (long) _length * size <= _budget;
+    }
+
+    /**
+     * Return the number of ints held in all my keystreams.
+     */
+    synchronized long used() {
+        return _used;
+    }
+
+    /**
+     * Return the number of keystreams I hold.
+     */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /**
+     * Return the keystream recorded for ROTORS at the settings and
+     * rings in KEY, alternating, or null if there is none.  It is the
+     * most recently used afterwards.
+     */
+    synchronized int[] get(Rotor[] rotors, int[] key) {
+        return _entries.get(new Key(rotors, key));
+    }
+
+    /**
+     * Record KEYSTREAM for ROTORS at the settings and rings in KEY, as
+     * the most recently used, and drop the least recently used
+     * keystreams while I hold more than my budget.  KEYSTREAM is not
+     * kept if it alone is over budget.
+     */
+    synchronized void put(Rotor[] rotors, int[] key, int[] keystream) {
+        if (keystream.length > _budget) {
+            return;
+        }
+        int[] old = _entries.put(new Key(rotors, key), keystream);
+        _used += keystream.length - (old == null ? 0 : old.length);
+        Iterator<int[]> eldest = _entries.values().iterator();
+        while (_used > _budget) {
+            _used -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * The settings a keystream was computed from.
+     */
+    private static class Key {
+
+        /**
+         * The settings and rings KEY, alternating, of ROTORS.
+         */
+        Key(Rotor[] rotors, int[] key) {
+            _rotors = rotors.clone();
+            _key = key.clone();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return Arrays.equals(_rotors, other._rotors)
+                && Arrays.equals(_key, other._key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(_rotors) + Arrays.hashCode(_key);
+        }
+
+        /**
+         * Rotors inserted, reflector first.
+         */
+        private final Rotor[] _rotors;
+        /**
+         * Settings and alphabet rings of _rotors, alternating.
+         */
+        private final int[] _key;
+    }
+
+    /**
+     * Number of keystrokes in each keystream.
+     */
+    private final int _length;
+    /**
+     * Largest number of ints held in all keystreams.
+     */
+    private final long _budget;
+    /**
+     * Number of ints held in all keystreams.
+     */
+    private long _used;
+    /**
+     * Keystreams, least recently used first.
+     */
+    private final Map<Key, int[]> _entries =
+        new LinkedHashMap<Key, int[]>(16, 0.75f, true);
+
+}
@@ -0,0 +1,80 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** The suite of all JUnit tests for the KeystreamCache class.
+ *  @author Ryan Johnson
+ */
+public class KeystreamCacheTest {
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Two rotors to key keystreams with. */
+    private final Rotor[] rotors = {
+        new Reflector("R", new Permutation("(AB)", new Alphabet("AB"))),
+        new MovingRotor("M", new Permutation("(AB)", new Alphabet("AB")),
+                        "A"),
+    };
+
+    @Test
+    public void testGetPut() {
+        KeystreamCache cache = new KeystreamCache(3, 100);
+        assertEquals(3, cache.length());
+        int[] key = {0, 0, 1, 0};
+        int[] keystream = new int[6];
+        assertNull(cache.get(rotors, key));
+        cache.put(rotors, key, keystream);
+        assertSame(keystream, cache.get(rotors, key.clone()));
+        assertNull(cache.get(rotors, new int[] {0, 0, 1, 1}));
+        assertNull(cache.get(new Rotor[] {rotors[0], rotors[0]}, key));
+        key[2] = 0;
+        assertNull(cache.get(rotors, key));
+        assertEquals(1, cache.size());
+        assertEquals(6, cache.used());
+    }
+
+    @Test
+    public void testEviction() {
+        KeystreamCache cache = new KeystreamCache(3, 20);
+        for (int k = 0; k < 3; k++) {
+            cache.put(rotors, new int[] {0, 0, k, 0}, new int[6]);
+        }
+        assertEquals(18, cache.used());
+        cache.get(rotors, new int[] {0, 0, 0, 0});
+        cache.put(rotors, new int[] {0, 0, 3, 0}, new int[6]);
+        assertEquals(3, cache.size());
+        assertEquals(18, cache.used());
+        assertNull(cache.get(rotors, new int[] {0, 0, 1, 0}));
+        assertEquals(6, cache.get(rotors, new int[] {0, 0, 0, 0}).length);
+        cache.put(rotors, new int[] {0, 0, 4, 0}, new int[21]);
+        assertEquals(3, cache.size());
+        cache.put(rotors, new int[] {0, 0, 4, 0}, new int[12]);
+        assertEquals(2, cache.size());
+        assertEquals(18, cache.used());
+        assertNull(cache.get(rotors, new int[] {0, 0, 2, 0}));
+    }
+
+    @Test
+    public void testFits() {
+        KeystreamCache cache = new KeystreamCache(3, 78);
+        assertTrue(cache.fits(26));
+        assertFalse(cache.fits(27));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadLength() {
+        new KeystreamCache(0, 100);
+    }
+
+}
@@ -0,0 +1,431 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * Reads lines of input into a single reusable buffer and classifies
+ * them, so that message lines can be converted in place.  A mapped file
+ * in an ASCII-compatible encoding is read as bytes, and a line that is
+ * all ASCII is decoded into chars only if they are asked for.  As a
+ * CharSequence, a LineReader is its current line.
+ *
+ * @author Ryan Johnson
+ */
+class LineReader implements CharSequence {
+
+    /**
+     * The kinds of line returned by next().
+     */
+    enum Kind {
+        /** No more input. */
+        EOF,
+        /** A line with no characters at all. */
+        EMPTY,
+        /** A non-empty line consisting only of whitespace. */
+        BLANK,
+        /** A line whose first token is "*". */
+        SETTINGS,
+        /** Any other line. */
+        MESSAGE
+    }
+
+    /**
+     * A reader of lines from IN.
+     */
+    LineReader(Reader in) {
+        _in = in;
+        _channel = null;
+        _decoder = null;
+        _raw = false;
+        _chunk = new char[CHUNK_SIZE];
+        _line = new char[INITIAL_LINE_SIZE];
+    }
+
+    /**
+     * A reader of lines from the file open on CHANNEL, encoded in
+     * CHARSET.  The file is memory-mapped a window at a time and
+     * decoded straight from the mapping, or read as bytes if CHARSET is
+     * ASCII-compatible (see AsciiConverter.compatible).
+     */
+    LineReader(FileChannel channel, Charset charset) {
+        _in = null;
+        _channel = channel;
+        _decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _raw = AsciiConverter.compatible(charset);
+        _chunk = new char[CHUNK_SIZE];
+        _line = new char[INITIAL_LINE_SIZE];
+        _rawLine = new byte[INITIAL_LINE_SIZE];
+    }
+
+    /**
+     * Read the next line, without its terminator, into buffer() and
+     * return its kind.  Lines end at "\n", "\r", or "\r\n".
+     */
+    Kind next() {
+        if (_raw) {
+            return nextBytes();
+        }
+        _length = 0;
+        boolean any = false;
+        while (fill()) {
+            char ch = _chunk[_pos];
+            _pos += 1;
+            if (_skipNewline) {
+                _skipNewline = false;
+                if (ch == '\n') {
+                    continue;
+                }
+            }
+            if (ch == '\n' || ch == '\r') {
+                _skipNewline = ch == '\r';
+                return classify();
+            }
+            any = true;
+            if (_length == _line.length) {
+                char[] larger = new char[2 * _line.length];
+                System.arraycopy(_line, 0, larger, 0, _length);
+                _line = larger;
+            }
+            _line[_length] = ch;
+            _length += 1;
+        }
+        return any ? classify() : Kind.EOF;
+    }
+
+    /**
+     * Read the next line as for next() from the mapped file as bytes,
+     * decoding it only if it is not all ASCII.
+     */
+    private Kind nextBytes() {
+        _length = 0;
+        _ascii = true;
+        _widened = false;
+        boolean any = false;
+        while (fillBytes()) {
+            byte b = _bytes.get();
+            if (_skipNewline) {
+                _skipNewline = false;
+                if (b == '\n') {
+                    continue;
+                }
+            }
+            if (b == '\n' || b == '\r') {
+                _skipNewline = b == '\r';
+                return classifyBytes();
+            }
+            any = true;
+            if (_length == _rawLine.length) {
+                _rawLine = Arrays.copyOf(_rawLine, 2 * _length);
+            }
+            _rawLine[_length] = b;
+            _length += 1;
+            _ascii &= b >= 0;
+        }
+        return any ? classifyBytes() : Kind.EOF;
+    }
+
+    /**
+     * Return the kind of the current line, read by nextBytes, decoding
+     * it first if it is not all ASCII.
+     */
+    private Kind classifyBytes() {
+        if (!_ascii) {
+            CharBuffer chars;
+            try {
+                chars = _decoder.decode(ByteBuffer.wrap(_rawLine, 0, _length));
+            } catch (CharacterCodingException excp) {
+                throw error("could not read input");
+            }
+            _length = chars.remaining();
+            if (_line.length < _length) {
+                _line = new char[Math.max(_length, 2 * _line.length)];
+            }
+            chars.get(_line, 0, _length);
+            _widened = true;
+        }
+        return classify();
+    }
+
+    /**
+     * Make sure the mapped window _bytes has an unread byte, mapping the
+     * next window when the current one is used up.  Returns false at
+     * the end of the file.
+     */
+    private boolean fillBytes() {
+        if (_bytes != null && _bytes.hasRemaining()) {
+            return true;
+        }
+        try {
+            long start = _bytes == null ? 0 : _mapped + _bytes.limit();
+            long size = _channel.size();
+            if (start >= size) {
+                return false;
+            }
+            _bytes = _channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(WINDOW_SIZE, size - start));
+            _mapped = start;
+            return true;
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+    }
+
+    /**
+     * Return true iff the current line was read as bytes and is all
+     * ASCII, so that bytes() holds it.
+     */
+    boolean ascii() {
+        return _raw && _ascii;
+    }
+
+    /**
+     * Return the buffer holding the current line, if ascii(), in its
+     * first length() bytes.
+     */
+    byte[] bytes() {
+        return _rawLine;
+    }
+
+    /**
+     * Return the buffer holding the current line in its first
+     * length() characters.
+     */
+    char[] buffer() {
+        if (!_widened) {
+            if (_line.length < _length) {
+                _line = new char[Math.max(_length, 2 * _line.length)];
+            }
+            for (int i = 0; i < _length; i++) {
+                _line[i] = (char) _rawLine[i];
+            }
+            _widened = true;
+        }
+        return _line;
+    }
+
+    /**
+     * Return the length of the current line.
+     */
+    @Override
+    public int length() {
+        return _length;
+    }
+
+    /**
+     * Return character I of the current line, without widening it.
+     */
+    @Override
+    public char charAt(int i) {
+        return _widened ? _line[i] : (char) _rawLine[i];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    /**
+     * Return true iff the current line contains CH.
+     */
+    boolean contains(char ch) {
+        char[] line = buffer();
+        for (int i = 0; i < _length; i++) {
+            if (line[i] == ch) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer(), 0, _length);
+    }
+
+    /**
+     * Return the kind of the current line.
+     */
+    private Kind classify() {
+        return classify(this);
+    }
+
+    /**
+     * Return the kind of LINE, a line without its terminator.
+     */
+    static Kind classify(CharSequence line) {
+        int len = line.length();
+        if (len == 0) {
+            return Kind.EMPTY;
+        }
+        int i;
+        for (i = 0; i < len; i++) {
+            if (!Character.isWhitespace(line.charAt(i))) {
+                break;
+            }
+        }
+        if (i == len) {
+            return Kind.BLANK;
+        }
+        if (line.charAt(i) == '*' && (i + 1 == len
+                || Character.isWhitespace(line.charAt(i + 1)))) {
+            return Kind.SETTINGS;
+        }
+        return Kind.MESSAGE;
+    }
+
+    /**
+     * Make sure _chunk has an unread character, returning false at the
+     * end of input.
+     */
+    private boolean fill() {
+        if (_pos < _limit) {
+            return true;
+        }
+        try {
+            int n;
+            do {
+                n = _in != null ? _in.read(_chunk, 0, _chunk.length)
+                    : readMapped();
+            } while (n == 0);
+            if (n < 0) {
+                return false;
+            }
+            _pos = 0;
+            _limit = n;
+            return true;
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+    }
+
+    /**
+     * Decode characters from the mapped file into _chunk, mapping the
+     * next window when the current one is used up.  Returns the number
+     * of characters decoded, or -1 at the end of the file.
+     */
+    private int readMapped() throws IOException {
+        if (_decoded) {
+            return -1;
+        }
+        CharBuffer out = CharBuffer.wrap(_chunk);
+        long size = _channel.size();
+        while (out.position() == 0) {
+            if (_bytes == null || _bytes.remaining() < REMAP_THRESHOLD
+                    && _mapped + _bytes.limit() < size) {
+                long start = _bytes == null ? 0 : _mapped + _bytes.position();
+                _bytes = _channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(WINDOW_SIZE, size - start));
+                _mapped = start;
+            }
+            boolean end = _mapped + _bytes.limit() == size;
+            _decoder.decode(_bytes, out, end);
+            if (end && !_bytes.hasRemaining()) {
+                if (_decoder.flush(out).isUnderflow()) {
+                    _decoded = true;
+                }
+                break;
+            }
+        }
+        return out.position() == 0 ? -1 : out.position();
+    }
+
+    /**
+     * Number of characters read from _in at a time.
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+    /**
+     * Initial capacity of the line buffer.
+     */
+    private static final int INITIAL_LINE_SIZE = 256;
+    /**
+     * Largest number of bytes of a file mapped at once.
+     */
+    private static final long WINDOW_SIZE = 1L << 28;
+    /**
+     * A window with fewer undecoded bytes than this left is replaced by
+     * one starting at the first of them.  Exceeds the length of any
+     * encoded character.
+     */
+    private static final int REMAP_THRESHOLD = 16;
+
+    /**
+     * Source of input, or null if reading a mapped file.
+     */
+    private final Reader _in;
+    /**
+     * The mapped file, or null if reading from _in.
+     */
+    private final FileChannel _channel;
+    /**
+     * Decoder for the mapped file.
+     */
+    private final CharsetDecoder _decoder;
+    /**
+     * True iff the mapped file is read as bytes.
+     */
+    private final boolean _raw;
+    /**
+     * The currently mapped window of _channel.
+     */
+    private MappedByteBuffer _bytes;
+    /**
+     * Position in the file of the start of _bytes.
+     */
+    private long _mapped;
+    /**
+     * True once all of the mapped file has been decoded and returned.
+     */
+    private boolean _decoded;
+    /**
+     * Characters read from _in but not yet consumed.
+     */
+    private final char[] _chunk;
+    /**
+     * Position of the next unread character in _chunk.
+     */
+    private int _pos;
+    /**
+     * End of the valid characters in _chunk.
+     */
+    private int _limit;
+    /**
+     * True iff the last line ended in "\r", so a following "\n" is
+     * part of its terminator.
+     */
+    private boolean _skipNewline;
+    /**
+     * The current line.
+     */
+    private char[] _line;
+    /**
+     * The current line as bytes, when read as bytes.
+     */
+    private byte[] _rawLine;
+    /**
+     * True iff _line holds the current line.
+     */
+    private boolean _widened = true;
+    /**
+     * True iff the current line, if read as bytes, is all ASCII.
+     */
+    private boolean _ascii;
+    /**
+     * Length of the current line.
+     */
+    private int _length;
+
+}
@@ -1,12 +1,19 @@
 package enigma;
 
+import java.nio.CharBuffer;
 import java.util.Collection;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static enigma.EnigmaException.*;
 
 /**
- * Class that represents a complete enigma machine.
+ * Class that represents a complete enigma machine.  My rotors are
+ * used only for their wiring and notches, which never change; the
+ * settings and alphabet rings of my available rotors are kept by me.
+ * Any number of machines may therefore share the same rotors, on any
+ * number of threads.
  *
  * @author Ryan Johnson
  */
@@ -15,7 +22,7 @@ class Machine {
     /**
      * A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
      * and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
-     * available rotors.
+     * available rotors, which start at setting 0 with alphabet ring 0.
      */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
@@ -23,7 +30,112 @@ class Machine {
         _numRotors = numRotors;
         _pawls = pawls;
         _allRotors = new ArrayList<Rotor>(allRotors);
-        _rotors = new ArrayList<Rotor>();
+        int n = _allRotors.size();
+        _settings = new int[n];
+        _rings = new int[n];
+        _offsets = new int[n];
+        _rotors = new Rotor[0];
+        _slots = new int[0];
+        _rotates = new boolean[0];
+        _start = new int[0];
+    }
+
+    /**
+     * A machine like ORIGINAL, sharing its available rotors, but with
+     * all of them at setting 0 with alphabet ring 0, and no rotors
+     * inserted.
+     */
+    Machine(Machine original) {
+        _alphabet = original._alphabet;
+        _numRotors = original._numRotors;
+        _pawls = original._pawls;
+        _allRotors = original._allRotors;
+        int n = _allRotors.size();
+        _settings = new int[n];
+        _rings = new int[n];
+        _offsets = new int[n];
+        _rotors = new Rotor[0];
+        _slots = new int[0];
+        _rotates = new boolean[0];
+        _start = new int[0];
+        _keystreamLimit = original._keystreamLimit;
+        _keystreamCache = original._keystreamCache;
+        _metrics = original._metrics;
+    }
+
+    /**
+     * Return a new machine like me, sharing my available rotors, but
+     * with all of them at setting 0 with alphabet ring 0, and no rotors
+     * inserted.
+     */
+    Machine copy() {
+        return new Machine(this);
+    }
+
+    /**
+     * Return every way of filling NUMROTORS rotor slots, PAWLS of them
+     * with pawls, from ROTORS, each as names for insertRotors.  Slot 0
+     * holds a reflector, the rightmost PAWLS slots hold moving rotors,
+     * and the rest hold rotors that neither move nor reflect.
+     */
+    static List<String[]> wheelOrders(Collection<Rotor> rotors,
+                                      int numRotors, int pawls) {
+        ArrayList<String[]> orders = new ArrayList<String[]>();
+        addOrders(new ArrayList<Rotor>(rotors), pawls,
+                  new String[numRotors], 0, orders);
+        return orders;
+    }
+
+    /**
+     * Fill in ORDER[K ..] from ROTORS in every way allowed by
+     * wheelOrders with PAWLS pawls, adding each result to ORDERS.
+     */
+    private static void addOrders(ArrayList<Rotor> rotors, int pawls,
+                                  String[] order, int k,
+                                  List<String[]> orders) {
+        if (k == order.length) {
+            orders.add(order.clone());
+            return;
+        }
+        for (Rotor rotor : rotors) {
+            boolean fits = k == 0 ? rotor.reflecting()
+                : !rotor.reflecting()
+                    && rotor.rotates() == (k >= order.length - pawls);
+            if (fits && !Arrays.asList(order).subList(0, k)
+                    .contains(rotor.name())) {
+                order[k] = rotor.name();
+                addOrders(rotors, pawls, order, k + 1, orders);
+            }
+        }
+    }
+
+    /**
+     * Return my alphabet.
+     */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /**
+     * Return me to the state of a new machine: no rotors inserted, all
+     * my available rotors at setting 0 with alphabet ring 0, and no
+     * plugboard.  Whatever I have precomputed for my rotors is kept, so
+     * that a reset machine is cheaper to reuse than a new one.
+     */
+    void reset() {
+        sync();
+        Arrays.fill(_settings, 0);
+        Arrays.fill(_rings, 0);
+        Arrays.fill(_offsets, 0);
+        _fast = -1;
+        _moves += 1;
+        _rotors = new Rotor[0];
+        _slots = new int[0];
+        _rotates = new boolean[0];
+        _start = new int[0];
+        _plugboard = null;
+        _keystrokes = 0;
+        _pending = false;
     }
 
     /**
@@ -46,14 +158,34 @@ class Machine {
      * Initially, all rotors are set at their 0 setting.
      */
     void insertRotors(String[] rotors) {
-        _rotors = new ArrayList<Rotor>();
+        sync();
+        ArrayList<Integer> inserted = new ArrayList<Integer>();
         for (int i = 0; i < rotors.length; i++) {
             for (int j = 0; j < _allRotors.size(); j++) {
                 if (rotors[i].equals(_allRotors.get(j).name())) {
-                    _rotors.add(_allRotors.get(j));
+                    inserted.add(j);
+                }
+            }
+        }
+        _rotors = new Rotor[inserted.size()];
+        _slots = new int[inserted.size()];
+        _rotates = new boolean[_rotors.length];
+        for (int i = 0; i < _rotors.length; i++) {
+            _slots[i] = inserted.get(i);
+            _rotors[i] = _allRotors.get(_slots[i]);
+            _rotates[i] = _rotors[i].rotates();
+        }
+        _fast = -1;
+        if (_rotors.length > 0) {
+            _fast = _slots[_rotors.length - 1];
+            for (int i = 0; i < _rotors.length - 1; i++) {
+                if (_slots[i] == _fast) {
+                    _fast = -1;
                 }
             }
         }
+        _moves += 1;
+        markStart();
     }
 
     /**
@@ -62,8 +194,9 @@ class Machine {
      * to the leftmost rotor setting (not counting the reflector).
      */
     void setRotors(String setting) {
+        sync();
         for (int i = 0; i < setting.length(); i++) {
-            _rotors.get(i + 1).set(setting.charAt(i));
+            setLetter(_slots[i + 1], setting.charAt(i));
         }
         int temporary = 0;
         for (Rotor rot : _rotors) {
@@ -74,6 +207,89 @@ class Machine {
         if (_pawls != temporary) {
             throw error("Wrong number of moving rotors");
         }
+        markStart();
+    }
+
+    /**
+     * Set available rotor R to the setting given by the character
+     * CPOSN.
+     */
+    private void setLetter(int r, char cposn) {
+        if (_allRotors.get(r).reflecting()) {
+            throw error("reflector has only one position");
+        }
+        if (!_alphabet.contains(cposn)) {
+            throw error("Does not contain");
+        }
+        set(r, _alphabet.toInt(cposn));
+    }
+
+    /**
+     * Set available rotor R to setting POSN, which must be in range.
+     */
+    private void set(int r, int posn) {
+        _settings[r] = posn;
+        _offsets[r] = wrap(posn - _rings[r]);
+        if (r != _fast) {
+            _moves += 1;
+        }
+    }
+
+    /**
+     * Return P modulo my alphabet size.
+     */
+    private int wrap(int p) {
+        int size = _alphabet.size();
+        int r = p % size;
+        return r < 0 ? r + size : r;
+    }
+
+    /**
+     * Record the current settings of my rotors as position 0.
+     */
+    private void markStart() {
+        _start = new int[_rotors.length];
+        for (int i = 0; i < _rotors.length; i++) {
+            _start[i] = _settings[_slots[i]];
+        }
+        _keystrokes = 0;
+        _pending = _keystreamLimit > 0 || _keystreamCache != null;
+    }
+
+    /**
+     * Precompute my conversions at every rotor position reachable from
+     * the settings given to setRotors whenever my rotating rotors have
+     * at most LIMIT positions between them.  Until the rotors are set
+     * again, converting a character is then a lookup in that keystream.
+     * A LIMIT of 0 turns this off.  The keystream takes LIMIT times
+     * the alphabet size ints at most.
+     */
+    void setKeystreamLimit(int limit) {
+        _keystreamLimit = limit;
+        _keystreamKey = null;
+    }
+
+    /**
+     * Convert the first keystrokes after the rotors are set from the
+     * keystreams in CACHE, computing and recording them there for
+     * settings not seen before, whenever the whole keystream from those
+     * settings is too large for my keystream limit.  Copies of me share
+     * CACHE.  A null CACHE turns this off.
+     */
+    void setKeystreamCache(KeystreamCache cache) {
+        _keystreamCache = cache;
+        _keystreamKey = null;
+    }
+
+    /**
+     * Record what I do in METRICS, or nothing if METRICS is null.
+     * Copies of me record in the same METRICS.  Rotor advances are
+     * counted as my rotors step from keystroke to keystroke, so none
+     * are counted while converting from a keystream, seeking, or
+     * advancing by more than one keystroke at a time.
+     */
+    void setMetrics(Metrics metrics) {
+        _metrics = metrics;
     }
 
     /**
@@ -89,33 +305,390 @@ class Machine {
      * the machine.
      */
     int convert(int c) {
-        int[] check = new int[_rotors.size()];
-        for (int i = 0; i < check.length; i++) {
-            check[i] = 0;
+        if (_pending) {
+            startKeystream();
         }
-        check[_rotors.size() - 1] = 1;
-        for (int i = _rotors.size() - 1; i > 0; i--) {
-            if (_rotors.get(i).atNotch() && _rotors.get(i - 1).rotates()) {
-                check[i - 1] = 1;
-                check[i] = 1;
+        if (_row >= 0 && _row < _rows) {
+            int row = _row;
+            _row = row + 1 == _rows ? _tail : row + 1;
+            _keystrokes += 1;
+            return _plugboard.permute(
+                _keystream[row * _alphabet.size() + _plugboard.permute(c)]);
+        }
+        advance();
+        return substitute(c);
+    }
+
+    /**
+     * Return the conversion of C with my rotors where they are now,
+     * without advancing them.
+     */
+    int substitute(int c) {
+        return _plugboard.permute(path(_plugboard.permute(c)));
+    }
+
+    /**
+     * Return the conversion of C through my rotors where they are now,
+     * leaving out the plugboard.
+     */
+    private int path(int c) {
+        int last = _rotors.length - 1;
+        for (int i = last; i > 0; i--) {
+            c = _rotors[i].convertForward(c, _offsets[_slots[i]]);
+        }
+        for (int i = 0; i <= last; i++) {
+            c = _rotors[i].convertBackward(c, _offsets[_slots[i]]);
+        }
+        return c;
+    }
+
+    /**
+     * Advance my rotors as for one keystroke, as convert(int) does
+     * before converting its character.
+     */
+    void advance() {
+        sync();
+        stepRotors(_metrics);
+        _keystrokes += 1;
+    }
+
+    /**
+     * Move my rotors as for one keystroke, recording their advances in
+     * METRICS unless it is null.
+     */
+    private void stepRotors(Metrics metrics) {
+        int last = _rotors.length - 1;
+        for (int i = 0; i <= last; i++) {
+            if (!_rotates[i]) {
+                continue;
+            }
+            boolean carried = i == last || atNotch(i + 1);
+            boolean doubleStep = !carried
+                && i > 0 && _rotates[i - 1] && atNotch(i);
+            if (carried || doubleStep) {
+                int r = _slots[i];
+                set(r, _settings[r] + 1 == _rotors[i].size() ? 0
+                    : _settings[r] + 1);
+                if (metrics != null) {
+                    metrics.advanced(i, doubleStep);
+                }
             }
         }
-        for (int i = 0; i < _rotors.size(); i++) {
-            if (check[i] == 1) {
-                _rotors.get(i).advance();
+    }
+
+    /**
+     * Return true iff the rotor in slot K is at one of its notches.
+     */
+    private boolean atNotch(int k) {
+        return _rotors[k].notchAt(_settings[_slots[k]]);
+    }
+
+    /**
+     * Start converting from _keystream, if my rotors are at their
+     * starting settings and the keystream from those settings is small
+     * enough.  The keystream is computed unless it is the one last
+     * used, and is laid out as one row of conversions for each
+     * keystroke, up to the first repeated rotor position.  Failing
+     * that, the start of the keystream comes from _keystreamCache, if
+     * there is one.
+     */
+    private void startKeystream() {
+        _pending = false;
+        if (_keystrokes != 0) {
+            return;
+        }
+        int[] key = new int[2 * _rotors.length];
+        for (int i = 0; i < _rotors.length; i++) {
+            key[2 * i] = _settings[_slots[i]];
+            key[2 * i + 1] = _rings[_slots[i]];
+        }
+        if (!Arrays.equals(key, _keystreamKey)
+                || !Arrays.equals(_rotors, _keystreamRotors)) {
+            _keystreamKey = key;
+            _keystreamRotors = _rotors;
+            _keystream = _keystreamLimit > 0 ? computeKeystream() : null;
+            if (_keystream == null && _keystreamCache != null) {
+                _keystream = cachedKeystream(key);
             }
         }
-        int permutated = _plugboard.permute(c);
-        int count = _rotors.size() - 1;
-        while (count > 0) {
-            permutated = _rotors.get(count).convertForward(permutated);
-            count -= 1;
+        if (_keystream != null) {
+            _row = 0;
         }
-        for (Rotor rot : _rotors) {
-            permutated = rot.convertBackward(permutated);
+    }
+
+    /**
+     * Return the keystream from the current settings of my rotors, or
+     * null if my rotating rotors have more than _keystreamLimit
+     * positions.  Sets _rows and _tail, and leaves my rotors where they
+     * were.
+     */
+    private int[] computeKeystream() {
+        int size = _alphabet.size();
+        if (_rotors.length == 0) {
+            return null;
+        }
+        long positions = 1;
+        for (int i = 0; i < _rotors.length; i++) {
+            if (_rotates[i]) {
+                positions *= _rotors[i].size();
+                if (positions > _keystreamLimit
+                        || positions * size > Integer.MAX_VALUE) {
+                    return null;
+                }
+            }
+        }
+        int[] seen = new int[(int) positions];
+        Arrays.fill(seen, -1);
+        int[] keystream = new int[(int) positions * size];
+        int row;
+        for (row = 0; true; row++) {
+            stepRotors(null);
+            int position = 0;
+            for (int i = 0; i < _rotors.length; i++) {
+                if (_rotates[i]) {
+                    position = position * _rotors[i].size()
+                        + _settings[_slots[i]];
+                }
+            }
+            if (seen[position] >= 0) {
+                _tail = seen[position];
+                break;
+            }
+            seen[position] = row;
+            for (int c = 0; c < size; c++) {
+                keystream[row * size + c] = path(c);
+            }
+        }
+        _rows = row;
+        for (int i = 0; i < _rotors.length; i++) {
+            set(_slots[i], _start[i]);
+        }
+        return Arrays.copyOf(keystream, row * size);
+    }
+
+    /**
+     * Return the first _keystreamCache.length() keystrokes of the
+     * keystream from the current settings of my rotors, whose settings
+     * and rings are KEY, taken from _keystreamCache or computed and
+     * recorded there, or null if they could not be recorded there, since
+     * computing them for one use would cost more than it saves.  Sets
+     * _rows and _tail, and leaves my rotors where they were.
+     */
+    private int[] cachedKeystream(int[] key) {
+        int size = _alphabet.size();
+        int length = _keystreamCache.length();
+        if (_rotors.length == 0 || !_keystreamCache.fits(size)) {
+            return null;
+        }
+        int[] keystream = _keystreamCache.get(_rotors, key);
+        if (keystream == null) {
+            keystream = new int[length * size];
+            for (int row = 0; row < length; row++) {
+                stepRotors(null);
+                for (int c = 0; c < size; c++) {
+                    keystream[row * size + c] = path(c);
+                }
+            }
+            for (int i = 0; i < _rotors.length; i++) {
+                set(_slots[i], _start[i]);
+            }
+            _keystreamCache.put(_rotors, key, keystream);
+        }
+        _rows = length;
+        _tail = length;
+        return keystream;
+    }
+
+    /**
+     * Bring my rotors up to date after converting from _keystream,
+     * which leaves them at their starting settings.
+     */
+    private void sync() {
+        if (_row >= 0) {
+            _row = -1;
+            long position = _keystrokes;
+            for (int i = 0; i < _rotors.length; i++) {
+                set(_slots[i], _start[i]);
+            }
+            _keystrokes = 0;
+            advanceBy(position);
+        }
+    }
+
+    /**
+     * Return the number of rotors inserted in me, counting the
+     * reflector.
+     */
+    int insertedRotors() {
+        return _rotors.length;
+    }
+
+    /**
+     * Return my Kth inserted rotor, where rotor 0 is the reflector.
+     */
+    Rotor rotor(int k) {
+        return _rotors[k];
+    }
+
+    /**
+     * Return the setting of my Kth inserted rotor.
+     */
+    int setting(int k) {
+        sync();
+        return _settings[_slots[k]];
+    }
+
+    /**
+     * Return the setting less the alphabet ring of my Kth inserted
+     * rotor, modulo the alphabet size, which with its wiring determines
+     * its conversions.
+     */
+    int offset(int k) {
+        sync();
+        return _offsets[_slots[k]];
+    }
+
+    /**
+     * Return a count that changes whenever the offset (see offset) of
+     * any of my inserted rotors but the rightmost may have changed, so
+     * that what depends only on those offsets need be recomputed only
+     * when it does.  Rotors not yet brought up to date after converting
+     * from a keystream have not moved yet.
+     */
+    long moves() {
+        return _moves;
+    }
+
+    /**
+     * Set my Kth inserted rotor, not the reflector, to setting POSN and
+     * alphabet ring RING (both in range), without changing position().
+     * Meant for searches that step through settings with advance and
+     * substitute.
+     */
+    void setRotor(int k, int posn, int ring) {
+        sync();
+        int r = _slots[k];
+        _rings[r] = ring;
+        set(r, posn);
+    }
+
+    /**
+     * Return my plugboard.
+     */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    /**
+     * Return the number of characters converted since my rotors were
+     * last set by setRotors.
+     */
+    long position() {
+        return _keystrokes;
+    }
+
+    /**
+     * Move my rotors to where they would be after converting POSITION
+     * characters from the settings last given to setRotors.
+     */
+    void seek(long position) {
+        if (position < 0) {
+            throw error("negative position");
+        }
+        sync();
+        if (position < _keystrokes) {
+            for (int i = 0; i < _rotors.length; i++) {
+                set(_slots[i], _start[i]);
+            }
+            _keystrokes = 0;
+        }
+        advanceBy(position - _keystrokes);
+    }
+
+    /**
+     * Advance my rotors exactly as N calls of convert(int) would,
+     * without converting anything.  Runs of keystrokes that move only
+     * the rightmost rotor are skipped arithmetically, and once the
+     * rotor positions repeat, whole periods are skipped.
+     */
+    void advanceBy(long n) {
+        sync();
+        int last = _rotors.length - 1;
+        if (n <= 0 || last < 0) {
+            return;
+        }
+        int[] posns = new int[_rotors.length];
+        for (int i = 0; i <= last; i++) {
+            posns[i] = _settings[_slots[i]];
+        }
+        long remaining = n;
+        int[] saved = posns.clone();
+        long savedRemaining = remaining, power = 1, length = 0;
+        while (remaining > 0) {
+            long skip = Math.min(remaining, stepsToCarry(posns));
+            if (_rotates[last]) {
+                int size = _rotors[last].size();
+                posns[last] = (int) ((posns[last] + skip) % size);
+            }
+            remaining -= skip;
+            if (remaining == 0) {
+                break;
+            }
+            step(posns);
+            remaining -= 1;
+            if (saved != null) {
+                length += 1;
+                if (Arrays.equals(posns, saved)) {
+                    remaining %= savedRemaining - remaining;
+                    saved = null;
+                } else if (length == power) {
+                    saved = posns.clone();
+                    savedRemaining = remaining;
+                    power *= 2;
+                    length = 0;
+                }
+            }
+        }
+        for (int i = 0; i <= last; i++) {
+            set(_slots[i], posns[i]);
+        }
+        _keystrokes += n;
+    }
+
+    /**
+     * Return the number of keystrokes from rotor positions POSNS that
+     * move only the rightmost rotor, or Long.MAX_VALUE if no other
+     * rotor will ever move.
+     */
+    private long stepsToCarry(int[] posns) {
+        int last = posns.length - 1;
+        for (int i = 1; i < last; i++) {
+            if (_rotates[i - 1] && _rotors[i].notchAt(posns[i])) {
+                return 0;
+            }
+        }
+        if (last < 1 || !_rotates[last] || !_rotates[last - 1]) {
+            return Long.MAX_VALUE;
+        }
+        int steps = _rotors[last].stepsToNotch(posns[last]);
+        return steps < 0 ? Long.MAX_VALUE : steps;
+    }
+
+    /**
+     * Apply one keystroke's worth of rotor motion to POSNS, following
+     * the same rules as convert(int).
+     */
+    private void step(int[] posns) {
+        int last = posns.length - 1;
+        for (int i = 0; i <= last; i++) {
+            if (_rotates[i] && (i == last
+                    || _rotors[i + 1].notchAt(posns[i + 1])
+                    || i > 0 && _rotates[i - 1]
+                        && _rotors[i].notchAt(posns[i]))) {
+                posns[i] = posns[i] + 1 == _rotors[i].size() ? 0
+                    : posns[i] + 1;
+            }
         }
-        int answer = _plugboard.permute(permutated);
-        return answer;
     }
 
     /**
@@ -123,21 +696,125 @@ class Machine {
      * accordingly.
      */
     void setMachineAlphabet(String alpha) {
+        sync();
         for (int i = 0; i < alpha.length(); i++) {
-            _rotors.get(i + 1).setAlphabetRing(alpha.charAt(i));
+            int r = _slots[i + 1];
+            _rings[r] = _alphabet.toInt(alpha.charAt(i));
+            set(r, _settings[r]);
+        }
+    }
+
+    /**
+     * Returns the names of my rotors, reflector first.
+     */
+    String[] rotorNames() {
+        String[] names = new String[_rotors.length];
+        for (int i = 0; i < _rotors.length; i++) {
+            names[i] = _rotors[i].name();
+        }
+        return names;
+    }
+
+    /**
+     * Returns the settings of my rotors as letters, leftmost first and
+     * not counting the reflector, in the form accepted by setRotors.
+     */
+    String rotorSettings() {
+        sync();
+        StringBuilder setting = new StringBuilder();
+        for (int i = 1; i < _rotors.length; i++) {
+            setting.append(_alphabet.toChar(_settings[_slots[i]]));
+        }
+        return setting.toString();
+    }
+
+    /**
+     * Set each of my available rotors named in NAMES[1..] to the
+     * corresponding letter of SETTING, as returned by rotorSettings.
+     */
+    void setAvailableRotors(String[] names, String setting) {
+        sync();
+        for (int i = 1; i < names.length; i++) {
+            for (int r = 0; r < _allRotors.size(); r++) {
+                if (_allRotors.get(r).name().equals(names[i])) {
+                    setLetter(r, setting.charAt(i - 1));
+                }
+            }
         }
     }
 
+    /**
+     * Returns the alphabet ring letters of my rotors, leftmost first
+     * and not counting the reflector, in the form accepted by
+     * setMachineAlphabet.
+     */
+    String machineAlphabet() {
+        StringBuilder alpha = new StringBuilder();
+        for (int i = 1; i < _rotors.length; i++) {
+            alpha.append(_alphabet.toChar(_rings[_slots[i]]));
+        }
+        return alpha.toString();
+    }
+
     /**
      * Returns the encoding/decoding of MSG, updating the state of
      * the rotors accordingly.
      */
     String convert(String msg) {
-        String temp = "";
-        for (int i = 0; i < msg.length(); i++) {
-            temp += _alphabet.toChar(convert(_alphabet.toInt(msg.charAt(i))));
+        char[] buffer = msg.toCharArray();
+        convert(buffer, 0, buffer.length, buffer, 0);
+        return new String(buffer);
+    }
+
+    /**
+     * Convert the LEN characters of IN starting at OFF into OUT starting
+     * at OUTOFF, updating the state of the rotors accordingly.  IN and
+     * OUT may be the same array.
+     */
+    void convert(char[] in, int off, int len, char[] out, int outOff) {
+        if (_metrics != null) {
+            _metrics.converted(len);
+        }
+        for (int i = 0; i < len; i++) {
+            out[outOff + i] =
+                _alphabet.toChar(convert(_alphabet.toInt(in[off + i])));
+        }
+    }
+
+    /**
+     * Convert the LEN ASCII characters encoded in IN starting at OFF into
+     * OUT starting at OUTOFF, as for convert(char[], ...).  My alphabet
+     * must be ascii().  IN and OUT may be the same array.
+     */
+    void convert(byte[] in, int off, int len, byte[] out, int outOff) {
+        if (_metrics != null) {
+            _metrics.converted(len);
+        }
+        for (int i = 0; i < len; i++) {
+            out[outOff + i] =
+                _alphabet.toByte(convert(_alphabet.toInt(in[off + i])));
+        }
+    }
+
+    /**
+     * Convert as many remaining characters of IN as fit in OUT, putting
+     * the results in OUT and advancing the positions of both buffers.
+     */
+    void convert(CharBuffer in, CharBuffer out) {
+        int len = Math.min(in.remaining(), out.remaining());
+        if (in.hasArray() && out.hasArray()) {
+            convert(in.array(), in.arrayOffset() + in.position(), len,
+                    out.array(), out.arrayOffset() + out.position());
+            in.position(in.position() + len);
+            out.position(out.position() + len);
+        } else {
+            if (_metrics != null) {
+                _metrics.converted(len);
+            }
+            for (int i = 0; i < len; i++) {
+                out.put(_alphabet.toChar(convert(_alphabet.toInt(in.get()))));
+            }
         }
-        return temp;
     }
 
     /**
@@ -153,15 +830,106 @@ class Machine {
      */
     private int _pawls;
     /**
-     * List of all Rotors.
+     * List of all Rotors, possibly shared with other machines.
+     */
+    private final ArrayList<Rotor> _allRotors;
+    /**
+     * Setting of each rotor in _allRotors.
+     */
+    private final int[] _settings;
+    /**
+     * Alphabet ring of each rotor in _allRotors.
+     */
+    private final int[] _rings;
+    /**
+     * Setting less alphabet ring of each rotor in _allRotors, modulo
+     * the alphabet size.
+     */
+    private final int[] _offsets;
+    /**
+     * Rotors in order, reflector first.
+     */
+    private Rotor[] _rotors;
+    /**
+     * Index in _allRotors of each rotor in _rotors.  The same rotor may
+     * fill more than one slot, in which case the slots move together.
      */
-    private ArrayList<Rotor> _allRotors;
+    private int[] _slots;
     /**
-     * List of rotors in order.
+     * Whether each rotor in _rotors has a pawl.
      */
-    private ArrayList<Rotor> _rotors;
+    private boolean[] _rotates;
     /**
      * The plugboard.
      */
     private Permutation _plugboard;
+    /**
+     * The available rotor in my rightmost slot, if it is in no other
+     * slot, or -1.  Its moves are not counted in _moves.
+     */
+    private int _fast = -1;
+    /**
+     * Number of changes to the offsets of available rotors other than
+     * _fast.
+     */
+    private long _moves;
+    /**
+     * Settings of my rotors when last set by setRotors.
+     */
+    private int[] _start;
+    /**
+     * Characters converted since my rotors were last set by setRotors.
+     */
+    private long _keystrokes;
+    /**
+     * Largest number of positions of my rotating rotors for which I
+     * convert from a keystream, or 0.
+     */
+    private int _keystreamLimit;
+    /**
+     * Where I find and record the start of keystreams too large for
+     * _keystreamLimit, or null.
+     */
+    private KeystreamCache _keystreamCache;
+    /**
+     * True iff my rotors have been set and nothing converted since, so
+     * that the next conversion may start a keystream.
+     */
+    private boolean _pending;
+    /**
+     * Conversions, without the plugboard, for each keystroke from the
+     * settings in _keystreamKey, _rows rows of alphabet size entries,
+     * or null.
+     */
+    private int[] _keystream;
+    /**
+     * Settings and alphabet rings of _keystreamRotors, alternating, from
+     * which _keystream was computed.
+     */
+    private int[] _keystreamKey;
+    /**
+     * The rotors for which _keystream was computed.
+     */
+    private Rotor[] _keystreamRotors;
+    /**
+     * Number of rows in _keystream.
+     */
+    private int _rows;
+    /**
+     * The row at which the rotor positions begin to repeat.  The row
+     * after the last is _tail.  It is _rows if _keystream holds only
+     * the start of a keystream.
+     */
+    private int _tail;
+    /**
+     * The row of _keystream for the next keystroke, or -1 if I am not
+     * converting from _keystream.  While I am, my rotors stay at their
+     * starting settings; once the start of a keystream is used up, it is
+     * _rows until they are brought up to date.
+     */
+    private int _row = -1;
+    /**
+     * Where I record what I do, or null.
+     */
+    private Metrics _metrics;
 }
@@ -0,0 +1,515 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * A Flow.Processor that converts a stream of text with a machine, for
+ * use in reactive pipelines.  The text arrives in chunks of any size
+ * and is read as lines, as Main reads its input: a settings line sets
+ * the machine up (see Main.setUp), so that a stream is re-keyed in
+ * band, and each message line that follows is converted and emitted in
+ * groups of five followed by a line separator.  Blank lines between
+ * message lines are dropped, a run of them between a settings line and
+ * the first message line becomes one empty line, and a run before a
+ * settings line or the end of the stream becomes as many empty lines,
+ * except that a run between a settings line and the end of the stream
+ * is dropped.  The stream must start, apart from blank lines, with a
+ * settings line.  A line that ends a stream without a terminator is
+ * converted all the same.
+ *
+ * <p>This follows Main's output only while Main converts the whole of
+ * its input.  Where Main quietly stops early, at a settings line that
+ * directly follows another or that follows a line of spaces after a
+ * message, I carry on converting the rest of the stream.  I also treat
+ * a blank line holding characters other than spaces as an empty one.
+ *
+ * <p>Output is emitted in CharBuffers of at most a fixed capacity,
+ * ready to be read, and only as the subscriber requests it; chunks are
+ * requested from upstream one at a time, when nothing is left to emit.
+ * A subscriber may hand buffers back through release, to be reused.
+ * Errors in the text are signalled to the subscriber as
+ * EnigmaExceptions, after cancelling the upstream subscription.  There
+ * may be only one subscriber.
+ *
+ * @author Ryan Johnson
+ */
+class MachineProcessor implements Flow.Processor<CharBuffer, CharBuffer> {
+
+    /**
+     * A processor converting with MACHINE, which is set up by the
+     * settings lines of the stream, emitting buffers of CAPACITY chars.
+     */
+    MachineProcessor(Machine machine, int capacity) {
+        if (capacity <= 0) {
+            throw error("bad buffer capacity: %d", capacity);
+        }
+        _machine = machine;
+        _capacity = capacity;
+        _out = newBuffer();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super CharBuffer> subscriber) {
+        synchronized (this) {
+            if (_subscriber == null) {
+                _subscriber = subscriber;
+                subscriber = null;
+            }
+        }
+        if (subscriber != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException(
+                "processor already has a subscriber"));
+            return;
+        }
+        _subscriber.onSubscribe(new Downstream());
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        synchronized (this) {
+            if (_upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            _upstream = subscription;
+        }
+        drain();
+    }
+
+    @Override
+    public void onNext(CharBuffer chunk) {
+        if (stopped()) {
+            return;
+        }
+        try {
+            while (chunk.hasRemaining()) {
+                char ch = chunk.get();
+                if (_skipNewline) {
+                    _skipNewline = false;
+                    if (ch == '\n') {
+                        continue;
+                    }
+                }
+                if (ch == '\n' || ch == '\r') {
+                    _skipNewline = ch == '\r';
+                    endLine();
+                } else {
+                    _line.append(ch);
+                }
+            }
+            finishBuffer();
+        } catch (RuntimeException excp) {
+            fail(excp);
+            return;
+        }
+        synchronized (this) {
+            _requested = false;
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        synchronized (this) {
+            if (_done) {
+                return;
+            }
+            _done = true;
+            _error = error;
+            _ready.clear();
+        }
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        if (stopped()) {
+            return;
+        }
+        try {
+            if (_line.length() > 0) {
+                endLine();
+            }
+            if (_afterMessage) {
+                emptyLines(_blanks);
+            }
+            finishBuffer();
+        } catch (RuntimeException excp) {
+            fail(excp);
+            return;
+        }
+        synchronized (this) {
+            _done = true;
+        }
+        drain();
+    }
+
+    /**
+     * Return true iff I have failed, finished, or been cancelled, so
+     * that further input is to be ignored.
+     */
+    private synchronized boolean stopped() {
+        return _done || _cancelled;
+    }
+
+    /**
+     * Take back BUFFER, which I emitted and the subscriber no longer
+     * needs, to be reused for later output.
+     */
+    void release(CharBuffer buffer) {
+        if (buffer.capacity() == _capacity && _pool.size() < POOL_LIMIT) {
+            buffer.clear();
+            _pool.offer(buffer);
+        }
+    }
+
+    /**
+     * Handle the line accumulated in _line, and start a new one.
+     */
+    private void endLine() {
+        LineReader.Kind kind = LineReader.classify(_line);
+        if (kind == LineReader.Kind.SETTINGS) {
+            emptyLines(_blanks);
+            _blanks = 0;
+            Main.setUp(_machine, _line.toString());
+            _keyed = true;
+            _afterMessage = false;
+        } else if (kind == LineReader.Kind.MESSAGE) {
+            if (!_keyed) {
+                throw error("input has wrong format");
+            }
+            if (!_afterMessage) {
+                emptyLines(Math.min(_blanks, 1));
+            }
+            _blanks = 0;
+            convertLine();
+            _afterMessage = true;
+        } else if (_keyed) {
+            _blanks += 1;
+        }
+        _line.setLength(0);
+    }
+
+    /**
+     * Emit N empty lines.
+     */
+    private void emptyLines(int n) {
+        for (int i = 0; i < n; i++) {
+            emit(GroupWriter.NEWLINE, 0, GroupWriter.NEWLINE.length);
+        }
+    }
+
+    /**
+     * Convert the message line in _line, without its spaces, and emit
+     * it in groups of five followed by a line separator.
+     */
+    private void convertLine() {
+        int len = 0;
+        if (_letters.length < _line.length()) {
+            _letters = new char[Math.max(_line.length(), 2 * _letters.length)];
+        }
+        for (int i = 0; i < _line.length(); i++) {
+            if (_line.charAt(i) != ' ') {
+                _letters[len] = _line.charAt(i);
+                len += 1;
+            }
+        }
+        try {
+            _groups.convert(_machine, _letters, 0, len);
+            _groups.endLine();
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
+    /**
+     * Append the LEN chars of CHARS starting at OFF to the output,
+     * queueing each buffer as it fills.
+     */
+    private void emit(char[] chars, int off, int len) {
+        while (len > 0) {
+            int n = Math.min(len, _out.remaining());
+            _out.put(chars, off, n);
+            off += n;
+            len -= n;
+            if (!_out.hasRemaining()) {
+                finishBuffer();
+            }
+        }
+    }
+
+    /**
+     * Queue the output buffer for emission, unless it is empty, and
+     * start another.  Once I have stopped, the buffer is emptied for
+     * reuse instead.
+     */
+    private void finishBuffer() {
+        if (_out.position() == 0) {
+            return;
+        }
+        synchronized (this) {
+            if (_done || _cancelled) {
+                _out.clear();
+                return;
+            }
+            _out.flip();
+            _ready.add(_out);
+        }
+        _out = newBuffer();
+    }
+
+    /**
+     * Return an empty buffer from the pool, or a new one.
+     */
+    private CharBuffer newBuffer() {
+        CharBuffer buffer = _pool.poll();
+        return buffer != null ? buffer : CharBuffer.allocate(_capacity);
+    }
+
+    /**
+     * Stop on account of EXCP: cancel the upstream subscription and
+     * pass EXCP on to the subscriber.
+     */
+    private void fail(RuntimeException excp) {
+        Flow.Subscription upstream;
+        synchronized (this) {
+            upstream = _upstream;
+        }
+        if (upstream != null) {
+            upstream.cancel();
+        }
+        onError(excp);
+    }
+
+    /**
+     * Emit what the subscriber has asked for and is ready, request
+     * another chunk from upstream if the subscriber wants more and
+     * nothing is ready, and signal the end of the stream once all is
+     * emitted.  Only one thread drains at a time; a thread that finds
+     * another draining leaves it to go round again.
+     */
+    private void drain() {
+        synchronized (this) {
+            if (_draining) {
+                _again = true;
+                return;
+            }
+            _draining = true;
+        }
+        while (true) {
+            Flow.Subscriber<? super CharBuffer> subscriber;
+            CharBuffer next = null;
+            Flow.Subscription request = null;
+            boolean finish = false;
+            Throwable error;
+            synchronized (this) {
+                error = _error;
+                subscriber = _subscriber;
+                if (subscriber == null || _cancelled || _finished) {
+                    next = null;
+                } else if (!_ready.isEmpty() && _demand > 0 && error == null) {
+                    next = _ready.poll();
+                    _demand -= 1;
+                } else if (_done && (_ready.isEmpty() || error != null)) {
+                    finish = true;
+                    _finished = true;
+                } else if (_ready.isEmpty() && _demand > 0 && !_done
+                           && _upstream != null && !_requested) {
+                    _requested = true;
+                    request = _upstream;
+                }
+                if (next == null && !finish && request == null) {
+                    if (!_again) {
+                        _draining = false;
+                        return;
+                    }
+                    _again = false;
+                    continue;
+                }
+            }
+            if (next != null) {
+                subscriber.onNext(next);
+            } else if (finish) {
+                if (error != null) {
+                    subscriber.onError(error);
+                } else {
+                    subscriber.onComplete();
+                }
+            } else {
+                request.request(1);
+            }
+        }
+    }
+
+    /**
+     * My subscriber's subscription to me.
+     */
+    private class Downstream implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                onError(new IllegalArgumentException(
+                    "non-positive request: " + n));
+                cancelUpstream();
+                return;
+            }
+            synchronized (MachineProcessor.this) {
+                _demand = _demand + n < 0 ? Long.MAX_VALUE : _demand + n;
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (MachineProcessor.this) {
+                _cancelled = true;
+                _ready.clear();
+            }
+            cancelUpstream();
+        }
+
+        /**
+         * Cancel my processor's upstream subscription, if any.
+         */
+        private void cancelUpstream() {
+            Flow.Subscription upstream;
+            synchronized (MachineProcessor.this) {
+                upstream = _upstream;
+            }
+            if (upstream != null) {
+                upstream.cancel();
+            }
+        }
+    }
+
+    /**
+     * Largest number of buffers kept for reuse.
+     */
+    private static final int POOL_LIMIT = 64;
+
+    /**
+     * The machine converting my stream.
+     */
+    private final Machine _machine;
+    /**
+     * Capacity of the buffers I emit.
+     */
+    private final int _capacity;
+    /**
+     * Buffers released for reuse.
+     */
+    private final ConcurrentLinkedQueue<CharBuffer> _pool =
+        new ConcurrentLinkedQueue<CharBuffer>();
+    /**
+     * Buffers filled and waiting to be emitted.
+     */
+    private final ArrayDeque<CharBuffer> _ready = new ArrayDeque<CharBuffer>();
+    /**
+     * The buffer being filled.
+     */
+    private CharBuffer _out;
+    /**
+     * Formatter of converted message lines into my output buffers.
+     */
+    private final GroupWriter _groups = new GroupWriter(new Writer() {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            emit(cbuf, off, len);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    });
+    /**
+     * The current line, so far.
+     */
+    private final StringBuilder _line = new StringBuilder();
+    /**
+     * The letters of the message line being converted.
+     */
+    private char[] _letters = new char[GroupWriter.GROUP];
+    /**
+     * True iff the last line ended in "\r", so a following "\n" is
+     * part of its terminator.
+     */
+    private boolean _skipNewline;
+    /**
+     * True once a settings line has set up _machine.
+     */
+    private boolean _keyed;
+    /**
+     * True iff a message line has been converted since the last
+     * settings line.
+     */
+    private boolean _afterMessage;
+    /**
+     * Number of empty and blank lines since the last settings or
+     * message line.
+     */
+    private int _blanks;
+    /**
+     * My subscriber, or null.
+     */
+    private Flow.Subscriber<? super CharBuffer> _subscriber;
+    /**
+     * My subscription to upstream, or null.
+     */
+    private Flow.Subscription _upstream;
+    /**
+     * Number of buffers requested by my subscriber and not yet emitted.
+     */
+    private long _demand;
+    /**
+     * True iff a chunk has been requested from upstream and not yet
+     * received.
+     */
+    private boolean _requested;
+    /**
+     * True once upstream has completed or failed, or I have failed.
+     */
+    private boolean _done;
+    /**
+     * The error ending the stream, or null.
+     */
+    private Throwable _error;
+    /**
+     * True once my subscriber has been sent onComplete or onError.
+     */
+    private boolean _finished;
+    /**
+     * True once my subscriber has cancelled.
+     */
+    private boolean _cancelled;
+    /**
+     * True iff some thread is in drain.
+     */
+    private boolean _draining;
+    /**
+     * True iff drain must look again before returning.
+     */
+    private boolean _again;
+
+}
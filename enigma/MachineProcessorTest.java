@@ -0,0 +1,253 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+import static enigma.TestUtils.NAVALA;
+import static org.junit.Assert.*;
+
+/**
+ * The suite of all JUnit tests for the MachineProcessor class.
+ *
+ * @author Ryan Johnson
+ */
+public class MachineProcessorTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /**
+     * A configuration with the naval rotors B, Beta, I, II, III, and IV.
+     */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ 5 3\n"
+        + "I MQ " + NAVALA.get("I") + "\n"
+        + "II ME " + NAVALA.get("II") + "\n"
+        + "III MV " + NAVALA.get("III") + "\n"
+        + "IV MJ " + NAVALA.get("IV") + "\n"
+        + "Beta N " + NAVALA.get("Beta") + "\n"
+        + "B R " + NAVALA.get("B") + "\n";
+
+    /**
+     * Input that is re-keyed, once continuing from where the first
+     * section left its rotors and rings, with mixed line terminators.
+     */
+    private static final String INPUT =
+        "* B Beta III IV I AXLE BCD (YF) (ZH)\n"
+        + "FROM HIS SHOULDER HIAWATHA\r\n"
+        + "\n"
+        + "TOOK THE CAMERA OF ROSEWOOD\r"
+        + "* B Beta I II III A (AQ)\n"
+        + "MADE OF SLIDING FOLDING ROSEWOOD\n"
+        + "* B Beta III IV I QQQQ\r\n"
+        + "NEATLY PUT IT ALL TOGETHER\n";
+
+    /** Return a new machine configured by CONFIG. */
+    private Machine machine() {
+        ConfigCache.Config config = Main.parseConfig(new Scanner(CONFIG));
+        return new Machine(config.alphabet(), config.numRotors(),
+                           config.pawls(), config.rotors());
+    }
+
+    /** Return the output of Main converting INPUT with machine(). */
+    private String local(String input) {
+        StringWriter out = new StringWriter();
+        new Main(machine(), new LineReader(new InputStreamReader(
+            new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+            StandardCharsets.UTF_8)), out).process();
+        return out.toString();
+    }
+
+    /**
+     * A subscriber that collects what it receives, requesting BATCH
+     * buffers at a time and releasing each to PROCESSOR.
+     */
+    private static class Collector implements Flow.Subscriber<CharBuffer> {
+
+        /** A collector requesting BATCH buffers at a time from
+         *  PROCESSOR. */
+        Collector(MachineProcessor processor, int batch) {
+            _processor = processor;
+            _batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+            _outstanding = _batch;
+            subscription.request(_batch);
+        }
+
+        @Override
+        public void onNext(CharBuffer buffer) {
+            if (_outstanding == 0) {
+                _overflow = true;
+            }
+            _outstanding -= 1;
+            _text.append(buffer);
+            _processor.release(buffer);
+            if (_outstanding == 0) {
+                _outstanding = _batch;
+                _subscription.request(_batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            _error = error;
+            _done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            _done.countDown();
+        }
+
+        /** The processor I subscribe to. */
+        private final MachineProcessor _processor;
+        /** Number of buffers requested at a time. */
+        private final int _batch;
+        /** My subscription. */
+        private Flow.Subscription _subscription;
+        /** Number of buffers requested and not yet received. */
+        private int _outstanding;
+        /** True iff more buffers arrived than were requested. */
+        private volatile boolean _overflow;
+        /** Text received. */
+        private final StringBuilder _text = new StringBuilder();
+        /** Error received, if any. */
+        private volatile Throwable _error;
+        /** Counted down at the end of the stream. */
+        private final CountDownLatch _done = new CountDownLatch(1);
+    }
+
+    /**
+     * Return a collector that has received all of the conversion of
+     * INPUT by a processor with buffers of CAPACITY chars, fed in chunks
+     * of CHUNK chars, requesting BATCH buffers at a time.
+     */
+    private Collector run(String input, int capacity, int chunk, int batch)
+        throws InterruptedException {
+        MachineProcessor processor = new MachineProcessor(machine(),
+                                                          capacity);
+        Collector collector = new Collector(processor, batch);
+        processor.subscribe(collector);
+        try (SubmissionPublisher<CharBuffer> publisher =
+                new SubmissionPublisher<CharBuffer>()) {
+            publisher.subscribe(processor);
+            for (int i = 0; i < input.length(); i += chunk) {
+                publisher.submit(CharBuffer.wrap(
+                    input, i, Math.min(input.length(), i + chunk)));
+            }
+        }
+        collector._done.await();
+        assertFalse("more buffers than requested", collector._overflow);
+        return collector;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesMain() throws InterruptedException {
+        String expected = local(INPUT);
+        for (int chunk : new int[] {1, 2, 7, 40, 1000}) {
+            for (int capacity : new int[] {1, 16, 4096}) {
+                Collector collector = run(INPUT, capacity, chunk, 1);
+                assertNull(collector._error);
+                assertEquals("chunk " + chunk + ", capacity " + capacity,
+                             expected, collector._text.toString());
+            }
+        }
+        Collector collector = run(INPUT, 8, 5, 3);
+        assertNull(collector._error);
+        assertEquals(expected, collector._text.toString());
+    }
+
+    @Test
+    public void testUnterminatedLine() throws InterruptedException {
+        String input = "* B Beta III IV I AXLE\nFROM HIS";
+        Collector collector = run(input, 64, 3, 1);
+        assertEquals(local(input + "\n"), collector._text.toString());
+    }
+
+    @Test
+    public void testNoEarlyStop() throws InterruptedException {
+        String rekeyed = "* B Beta III IV I AXLE\n* B Beta III IV I QQQQ\n"
+            + "FROM HIS SHOULDER\n";
+        assertEquals("", local(rekeyed));
+        Collector collector = run(rekeyed, 64, 3, 1);
+        assertNull(collector._error);
+        assertEquals(local("* B Beta III IV I QQQQ\nFROM HIS SHOULDER\n"),
+                     collector._text.toString());
+        String afterBlank = "* B Beta III IV I AXLE\nFROM HIS\n  \n"
+            + "* B Beta III IV I QQQQ\nSHOULDER\n";
+        String whole = local("* B Beta III IV I AXLE\nFROM HIS\n")
+            + System.lineSeparator()
+            + local("* B Beta III IV I QQQQ\nSHOULDER\n");
+        assertEquals(local("* B Beta III IV I AXLE\nFROM HIS\n  \n"),
+                     local(afterBlank));
+        collector = run(afterBlank, 64, 5, 1);
+        assertNull(collector._error);
+        assertEquals(whole, collector._text.toString());
+    }
+
+    @Test
+    public void testErrors() throws InterruptedException {
+        Collector collector = run("FROM HIS SHOULDER\n", 64, 4, 1);
+        assertTrue(collector._error instanceof EnigmaException);
+        collector = run("* B Beta III IV I AXLE\nFROM HIS SHOULDER\n"
+                        + "* B Beta III IV I AXLE (AB\nHIAWATHA\n", 64, 4, 1);
+        assertTrue(collector._error instanceof EnigmaException);
+        assertTrue(collector._text.toString().startsWith("HYIHL BKOML"));
+    }
+
+    @Test
+    public void testIgnoredAfterStop() {
+        Machine keyed = machine();
+        Main.setUp(keyed, "* B Beta III IV I AXLE");
+        String expected = keyed.convert("FROMHIS");
+        for (boolean cancel : new boolean[] {true, false}) {
+            Machine M = machine();
+            MachineProcessor processor = new MachineProcessor(M, 64);
+            Collector collector = new Collector(processor, 1);
+            processor.subscribe(collector);
+            processor.onNext(CharBuffer.wrap("* B Beta III IV I AXLE\n"));
+            if (cancel) {
+                collector._subscription.cancel();
+            } else {
+                processor.onError(new IllegalStateException());
+            }
+            processor.onNext(CharBuffer.wrap("* B Beta III IV I QQQQ\nAB\n"));
+            processor.onComplete();
+            assertEquals(expected, M.convert("FROMHIS"));
+            assertEquals("", collector._text.toString());
+        }
+    }
+
+    @Test
+    public void testSecondSubscriber() throws InterruptedException {
+        MachineProcessor processor = new MachineProcessor(machine(), 64);
+        processor.subscribe(new Collector(processor, 1));
+        Collector second = new Collector(processor, 1);
+        processor.subscribe(second);
+        second._done.await();
+        assertTrue(second._error instanceof IllegalStateException);
+    }
+
+}
@@ -0,0 +1,226 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * A stream of characters converted by one machine, chunk by chunk,
+ * that can be checkpointed and later resumed, in this process or
+ * another, as if it had never stopped.  A checkpoint is a small binary
+ * record of the machine's rotor names, rotor settings, alphabet rings,
+ * plugboard, and the number of characters converted so far:
+ *
+ * <pre>
+ *   int   MAGIC ("ENGK")        int   VERSION
+ *   int   alphabet size         long  keystrokes
+ *   int   number of slots
+ *   per slot: short name length, name chars, int setting, int ring
+ *   int[alphabet size] plugboard
+ *   long  CRC32 of all the above
+ * </pre>
+ *
+ * <p>The rotors' wiring and notches are not recorded: a session is
+ * resumed on a machine with the same available rotors.
+ *
+ * @author Ryan Johnson
+ */
+class MachineSession {
+
+    /**
+     * A session converting with MACHINE, which must have its rotors
+     * inserted and set and its plugboard set.
+     */
+    MachineSession(Machine machine) {
+        this(machine, 0);
+    }
+
+    /**
+     * A session converting with MACHINE that has already converted
+     * KEYSTROKES characters.
+     */
+    private MachineSession(Machine machine, long keystrokes) {
+        if (machine.insertedRotors() != machine.numRotors()
+                || machine.plugboard() == null) {
+            throw error("machine is not set up");
+        }
+        _machine = machine;
+        _keystrokes = keystrokes;
+    }
+
+    /**
+     * Return the session recorded in CHECKPOINT, resumed on MACHINE,
+     * which must have the available rotors of the machine checkpointed.
+     * MACHINE's rotors and plugboard are set from CHECKPOINT.
+     */
+    static MachineSession restore(Machine machine, byte[] checkpoint) {
+        ByteBuffer in = ByteBuffer.wrap(checkpoint);
+        try {
+            int end = checkpoint.length - Long.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(checkpoint, 0, Math.max(end, 0));
+            if (end < 0 || crc.getValue() != in.getLong(end)) {
+                throw error("checkpoint is damaged");
+            }
+            in.limit(end);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw error("not a checkpoint");
+            }
+            int size = in.getInt();
+            if (size != machine.alphabet().size()) {
+                throw error("checkpoint is for an alphabet of %d characters",
+                            size);
+            }
+            long keystrokes = in.getLong();
+            int slots = in.getInt();
+            if (slots != machine.numRotors()) {
+                throw error("checkpoint is for %d rotor slots", slots);
+            }
+            String[] names = new String[slots];
+            int[] settings = new int[slots];
+            int[] rings = new int[slots];
+            for (int k = 0; k < slots; k++) {
+                char[] name = new char[in.getShort()];
+                for (int i = 0; i < name.length; i++) {
+                    name[i] = in.getChar();
+                }
+                names[k] = new String(name);
+                settings[k] = index(in.getInt(), size);
+                rings[k] = index(in.getInt(), size);
+            }
+            int[] plugboard = new int[size];
+            for (int c = 0; c < size; c++) {
+                plugboard[c] = in.getInt();
+            }
+            if (in.hasRemaining()) {
+                throw error("trailing bytes in checkpoint");
+            }
+            machine.insertRotors(names);
+            if (machine.insertedRotors() != slots) {
+                throw error("checkpoint names rotors not available");
+            }
+            int moving = 0;
+            for (int k = 1; k < slots; k++) {
+                machine.setRotor(k, settings[k], rings[k]);
+                if (machine.rotor(k).rotates()) {
+                    moving += 1;
+                }
+            }
+            if (moving != machine.numPawls()) {
+                throw error("Wrong number of moving rotors");
+            }
+            machine.setPlugboard(new Permutation(plugboard,
+                                                 machine.alphabet()));
+            return new MachineSession(machine, keystrokes);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | NegativeArraySizeException excp) {
+            throw error("checkpoint is truncated");
+        }
+    }
+
+    /**
+     * Return N, checking that it is an index in an alphabet of SIZE
+     * characters.
+     */
+    private static int index(int n, int size) {
+        if (n < 0 || n >= size) {
+            throw error("bad position %d in checkpoint", n);
+        }
+        return n;
+    }
+
+    /**
+     * Return the checkpoint of my state after everything converted so
+     * far.
+     */
+    byte[] checkpoint() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int size = _machine.alphabet().size();
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeLong(_keystrokes);
+            out.writeInt(_machine.insertedRotors());
+            for (int k = 0; k < _machine.insertedRotors(); k++) {
+                String name = _machine.rotor(k).name();
+                out.writeShort(name.length());
+                out.writeChars(name);
+                int setting = _machine.setting(k);
+                out.writeInt(setting);
+                out.writeInt(Math.floorMod(setting - _machine.offset(k),
+                                           size));
+            }
+            for (int c = 0; c < size; c++) {
+                out.writeInt(_machine.plugboard().permute(c));
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        return ByteBuffer.allocate(bytes.size() + Long.BYTES)
+            .put(bytes.toByteArray()).putLong(crc.getValue()).array();
+    }
+
+    /**
+     * Convert the LEN characters of IN starting at OFF into OUT starting
+     * at OUTOFF, continuing the stream.  IN and OUT may be the same
+     * array.
+     */
+    void convert(char[] in, int off, int len, char[] out, int outOff) {
+        _machine.convert(in, off, len, out, outOff);
+        _keystrokes += len;
+    }
+
+    /**
+     * Return the conversion of CHUNK, continuing the stream.
+     */
+    String convert(String chunk) {
+        char[] buffer = chunk.toCharArray();
+        convert(buffer, 0, buffer.length, buffer, 0);
+        return new String(buffer);
+    }
+
+    /**
+     * Return the number of characters converted in this session,
+     * counting those converted before the checkpoint it was restored
+     * from.
+     */
+    long keystrokes() {
+        return _keystrokes;
+    }
+
+    /**
+     * Return my machine.
+     */
+    Machine machine() {
+        return _machine;
+    }
+
+    /**
+     * First int of every checkpoint ("ENGK").
+     */
+    private static final int MAGIC = 0x454E474B;
+    /**
+     * Version of the checkpoint layout.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The machine converting my stream.
+     */
+    private final Machine _machine;
+    /**
+     * Number of characters converted.
+     */
+    private long _keystrokes;
+
+}
@@ -0,0 +1,109 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import static enigma.TestUtils.emptyNavalMachine;
+import static enigma.TestUtils.navalMachine;
+import static enigma.TestUtils.navalRotors;
+import static org.junit.Assert.assertEquals;
+
+/** The suite of all JUnit tests for the MachineSession class.
+ *  @author Ryan Johnson
+ */
+public class MachineSessionTest {
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A message long enough to turn the middle rotors. */
+    private static final String MESSAGE;
+
+    /** The plugboard of the machines under test. */
+    private static final String PLUGBOARD = "(HQ) (EX) (IP) (TR) (BY)";
+
+    static {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            msg.append((char) ('A' + (i * 7) % 26));
+        }
+        MESSAGE = msg.toString();
+    }
+
+    @Test
+    public void testResume() {
+        String expected =
+            navalMachine("AXLE", "BCDE", PLUGBOARD).convert(MESSAGE);
+        for (int split : new int[] {0, 1, 37, 700, 1999, 2000}) {
+            MachineSession session =
+                new MachineSession(navalMachine("AXLE", "BCDE", PLUGBOARD));
+            String first = session.convert(MESSAGE.substring(0, split));
+            byte[] checkpoint = session.checkpoint();
+            MachineSession resumed =
+                MachineSession.restore(emptyNavalMachine(), checkpoint);
+            assertEquals(split, resumed.keystrokes());
+            String rest = resumed.convert(MESSAGE.substring(split));
+            assertEquals("split at " + split, expected, first + rest);
+            assertEquals(MESSAGE.length(), resumed.keystrokes());
+            assertEquals(session.convert(MESSAGE.substring(split)), rest);
+        }
+    }
+
+    @Test
+    public void testResumeTwice() {
+        String expected =
+            navalMachine("AXLE", "BCDE", PLUGBOARD).convert(MESSAGE);
+        MachineSession session =
+            new MachineSession(navalMachine("AXLE", "BCDE", PLUGBOARD));
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < MESSAGE.length(); i += 300) {
+            String chunk = MESSAGE.substring(i,
+                    Math.min(i + 300, MESSAGE.length()));
+            result.append(session.convert(chunk));
+            session = MachineSession.restore(emptyNavalMachine(),
+                                             session.checkpoint());
+        }
+        assertEquals(expected, result.toString());
+    }
+
+    @Test
+    public void testKeystream() {
+        String expected =
+            navalMachine("AXLE", "BCDE", PLUGBOARD).convert(MESSAGE);
+        Machine M = navalMachine("AXLE", "BCDE", PLUGBOARD);
+        M.setKeystreamLimit(1 << 16);
+        MachineSession session = new MachineSession(M);
+        String first = session.convert(MESSAGE.substring(0, 500));
+        Machine N = emptyNavalMachine();
+        N.setKeystreamLimit(1 << 16);
+        String rest = MachineSession.restore(N, session.checkpoint())
+            .convert(MESSAGE.substring(500));
+        assertEquals(expected, first + rest);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDamaged() {
+        byte[] checkpoint =
+            new MachineSession(navalMachine("AXLE", "BCDE", PLUGBOARD))
+            .checkpoint();
+        checkpoint[20] ^= 1;
+        MachineSession.restore(emptyNavalMachine(), checkpoint);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTruncated() {
+        MachineSession.restore(emptyNavalMachine(), new byte[3]);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testMissingRotor() {
+        Machine M = navalMachine("AXLE", "BCDE", PLUGBOARD);
+        byte[] checkpoint = new MachineSession(M).checkpoint();
+        Alphabet a = M.alphabet();
+        MachineSession.restore(new Machine(a, 5, 3, navalRotors(a, "B")),
+                               checkpoint);
+    }
+}
@@ -4,9 +4,14 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.Timeout;
 
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Random;
 
 import static enigma.TestUtils.UPPER_STRING;
+import static enigma.TestUtils.emptyNavalMachine;
+import static enigma.TestUtils.navalRotors;
+import static enigma.TestUtils.setUpNaval;
 import static org.junit.Assert.assertEquals;
 
 /** The suite of all JUnit tests for the Machine class.
@@ -116,5 +121,322 @@ public class MachineTest {
 
     }
 
+    /** Return the machine of carroll.in, set to AXLE. */
+    private Machine navalMachine() {
+        return navalMachine(0);
+    }
+
+    /** The machine of navalMachine(), but a CompiledMachine keeping
+     *  CAPACITY tables if CAPACITY is positive. */
+    private Machine navalMachine(int capacity) {
+        Alphabet a = new Alphabet();
+        Machine M = capacity > 0
+            ? new CompiledMachine(a, 5, 3,
+                  navalRotors(a, "III", "IV", "I", "Beta", "B"), capacity)
+            : emptyNavalMachine();
+        return setUpNaval(M, "AXLE", null, "");
+    }
+
+    @Test
+    public void testBulkConvert() {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        String expected = "HYIHLBKOMLIUYDCMPPSFSZWSQCNJEXNUOJYRZEKTCNBDGU";
+        assertEquals(expected, navalMachine().convert(msg));
+
+        char[] out = new char[msg.length() + 2];
+        navalMachine().convert(msg.toCharArray(), 0, msg.length(), out, 2);
+        assertEquals(expected, new String(out, 2, msg.length()));
+
+        Machine M = navalMachine();
+        CharBuffer in = CharBuffer.wrap(msg);
+        CharBuffer result = CharBuffer.allocate(10);
+        StringBuilder all = new StringBuilder();
+        while (in.hasRemaining()) {
+            M.convert(in, result);
+            result.flip();
+            all.append(result);
+            result.clear();
+        }
+        assertEquals(expected, all.toString());
+    }
+
+    @Test
+    public void testSharedRotors() throws InterruptedException {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        String expected = navalMachine().convert(msg);
+        Machine M = navalMachine();
+        Machine C = navalMachine(16);
+        Machine[] machines = new Machine[4];
+        String[] results = new String[machines.length];
+        Thread[] threads = new Thread[machines.length];
+        for (int k = 0; k < machines.length; k++) {
+            Machine N = machines[k] = k % 2 == 0 ? M.copy() : C.copy();
+            int j = k;
+            threads[k] = new Thread(() -> {
+                N.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+                N.setPlugboard(new Permutation("", new Alphabet()));
+                StringBuilder all = new StringBuilder();
+                for (int i = 0; i < 200; i++) {
+                    N.setRotors("AXLE");
+                    all.setLength(0);
+                    all.append(N.convert(msg));
+                }
+                results[j] = all.toString();
+            });
+            threads[k].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (String result : results) {
+            assertEquals(expected, result);
+        }
+        assertEquals("AXLE", M.rotorSettings());
+    }
+
+    @Test
+    public void testMetrics() {
+        Machine M = navalMachine();
+        Metrics metrics = new Metrics(5);
+        M.setMetrics(metrics);
+        M.setRotors("AXJA");
+        M.convert("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        assertEquals(26, metrics.converted());
+        assertEquals(0, metrics.advances(1));
+        assertEquals(1, metrics.advances(2));
+        assertEquals(2, metrics.advances(3));
+        assertEquals(26, metrics.advances(4));
+        assertEquals(1, metrics.doubleSteps());
+        Machine copy = M.copy();
+        copy.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        copy.setRotors("AAAA");
+        copy.setPlugboard(new Permutation("", new Alphabet()));
+        copy.convert("AB");
+        assertEquals(28, metrics.converted());
+        assertEquals(28, metrics.advances(4));
+    }
+
+    @Test
+    public void testCopy() {
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        Machine M = navalMachine();
+        Machine copy = M.copy();
+        copy.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        copy.setRotors("AXLE");
+        copy.setPlugboard(new Permutation("", new Alphabet()));
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW", M.convert(msg));
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW", copy.convert(msg));
+        assertEquals("AXMB", copy.rotorSettings());
+        assertEquals(M.rotorSettings(), copy.rotorSettings());
+    }
+
+    /** Return a machine over the alphabet ABCDEF whose moving rotors,
+     *  left to right, have the notches in NOTCHES, preceded by FIXED
+     *  non-moving rotors. */
+    private Machine smallMachine(int fixed, String... notches) {
+        Alphabet a = new Alphabet("ABCDEF");
+        ArrayList<Rotor> allRotors = new ArrayList<Rotor>();
+        String[] names = new String[notches.length + fixed + 1];
+        names[0] = "R";
+        allRotors.add(new Reflector("R", new Permutation("(AB)(CD)(EF)", a)));
+        for (int i = 1; i < names.length; i++) {
+            names[i] = "R" + i;
+            Permutation p = new Permutation("(ACE)(BDF)", a);
+            if (i <= fixed) {
+                allRotors.add(new FixedRotor(names[i], p));
+            } else {
+                allRotors.add(new MovingRotor(names[i], p,
+                        notches[i - fixed - 1]));
+            }
+        }
+        Machine M = new Machine(a, names.length, notches.length, allRotors);
+        M.insertRotors(names);
+        M.setPlugboard(new Permutation("", a));
+        return M;
+    }
+
+    @Test
+    public void testAdvanceBy() {
+        String[][] configs = {
+            {"A", "C", "E"}, {"AD", "", "BF"}, {"F", "ABCDEF", "C"},
+            {"B", "B"}, {"", "A"}, {"C"},
+        };
+        for (String[] notches : configs) {
+            for (int fixed = 0; fixed < 2; fixed++) {
+                for (int n : new int[] {0, 1, 5, 37, 1000, 4321}) {
+                    Machine stepped = smallMachine(fixed, notches);
+                    Machine jumped = smallMachine(fixed, notches);
+                    String start = "ABCDEF".substring(0,
+                            notches.length + fixed);
+                    stepped.setRotors(start);
+                    jumped.setRotors(start);
+                    for (int k = 0; k < n; k++) {
+                        stepped.convert(0);
+                    }
+                    jumped.advanceBy(n);
+                    assertEquals(stepped.rotorSettings(),
+                            jumped.rotorSettings());
+                    assertEquals(n, jumped.position());
+                    assertEquals(stepped.convert(3), jumped.convert(3));
+                    jumped.seek(n / 2);
+                    stepped.setRotors(start);
+                    stepped.advanceBy(n / 2);
+                    assertEquals(stepped.rotorSettings(),
+                            jumped.rotorSettings());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSeekLongMessage() {
+        Machine M = navalMachine();
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        String expected = M.convert(msg);
+        M.seek(23);
+        assertEquals(expected.substring(23), M.convert(msg.substring(23)));
+        M.seek(1000000000000L);
+        Machine N = navalMachine();
+        N.advanceBy(1000000000000L % (26 * 25 * 26));
+        assertEquals(N.rotorSettings(), M.rotorSettings());
+    }
+
+    @Test
+    public void testCompiled() {
+        Random random = new Random(61);
+        char[] chars = new char[20000];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = UPPER_STRING.charAt(random.nextInt(26));
+        }
+        String msg = new String(chars);
+        for (int capacity : new int[] {1, 7, 1000}) {
+            Machine M = navalMachine();
+            Machine C = navalMachine(capacity);
+            for (String rings : new String[] {"AAAA", "BQRZ"}) {
+                M.setMachineAlphabet(rings);
+                C.setMachineAlphabet(rings);
+                M.setRotors("AXLE");
+                C.setRotors("AXLE");
+                assertEquals(M.convert(msg), C.convert(msg));
+                assertEquals(M.rotorSettings(), C.rotorSettings());
+            }
+            Machine N = M.copy();
+            Machine D = C.copy();
+            for (Machine machine : new Machine[] {N, D}) {
+                machine.insertRotors(
+                    new String[] {"B", "Beta", "I", "III", "IV"});
+                machine.setRotors("QEVJ");
+                machine.setPlugboard(
+                    new Permutation("(AQ)(EP)", new Alphabet()));
+            }
+            assertEquals(N.convert(msg), D.convert(msg));
+        }
+    }
+
+    @Test
+    public void testKeystream() {
+        String[][] configs = {
+            {"A", "C", "E"}, {"AD", "", "BF"}, {"F", "ABCDEF", "C"},
+            {"B", "B"}, {"", "A"}, {"C"},
+        };
+        String msg = "ABCDEFFEDCBAACEBDF";
+        for (int i = 0; i < 5; i++) {
+            msg += msg;
+        }
+        for (String[] notches : configs) {
+            for (int fixed = 0; fixed < 2; fixed++) {
+                Machine plain = smallMachine(fixed, notches);
+                Machine streamed = smallMachine(fixed, notches);
+                streamed.setKeystreamLimit(6 * 6 * 6);
+                String start = "ABCDEF".substring(0, notches.length + fixed);
+                for (String setting : new String[] {start, "", "E"}) {
+                    plain.setRotors(setting);
+                    streamed.setRotors(setting);
+                    assertEquals(plain.convert(msg), streamed.convert(msg));
+                    assertEquals(plain.rotorSettings(),
+                            streamed.rotorSettings());
+                    assertEquals(plain.convert(msg), streamed.convert(msg));
+                    plain.seek(100);
+                    streamed.seek(100);
+                    assertEquals(plain.convert(msg), streamed.convert(msg));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testKeystreamCache() {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        KeystreamCache cache = new KeystreamCache(20, 1 << 16);
+        Machine plain = navalMachine();
+        Machine cached = navalMachine();
+        cached.setKeystreamCache(cache);
+        Machine other = cached.copy();
+        other.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        String[] plugboards = {"(HQ) (EX) (IP) (TR) (BY)", "", "(AZ)"};
+        for (String setting : new String[] {"AXLE", "QEVJ", "AXLE"}) {
+            for (String plugboard : plugboards) {
+                for (int len : new int[] {5, 20, msg.length()}) {
+                    for (Machine M : new Machine[] {plain, cached, other}) {
+                        M.setRotors(setting);
+                        M.setPlugboard(
+                            new Permutation(plugboard, new Alphabet()));
+                    }
+                    String expected = plain.convert(msg.substring(0, len));
+                    assertEquals(expected,
+                                 cached.convert(msg.substring(0, len)));
+                    assertEquals(plain.rotorSettings(),
+                                 cached.rotorSettings());
+                    assertEquals(expected,
+                                 other.convert(msg.substring(0, len)));
+                    assertEquals(plain.convert(msg), cached.convert(msg));
+                }
+            }
+        }
+        assertEquals(2, cache.size());
+        assertEquals(2 * 20 * 26, cache.used());
+        plain.setRotors("AXLE");
+        cached.setRotors("AXLE");
+        plain.seek(7);
+        cached.seek(7);
+        assertEquals(plain.convert(msg), cached.convert(msg));
+    }
+
+    @Test
+    public void testKeystreamCacheOverBudget() {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        KeystreamCache cache = new KeystreamCache(200000, 1 << 16);
+        Machine plain = navalMachine();
+        Machine cached = navalMachine();
+        cached.setKeystreamCache(cache);
+        for (int k = 0; k < 200; k++) {
+            String setting = k % 2 == 0 ? "AXLE" : "QEVJ";
+            plain.setRotors(setting);
+            cached.setRotors(setting);
+            assertEquals(plain.convert(msg), cached.convert(msg));
+        }
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testCompiledMoves() {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        Machine M = navalMachine();
+        Machine C = navalMachine(64);
+        for (Machine machine : new Machine[] {M, C}) {
+            machine.convert(msg);
+            machine.setRotor(2, 5, 3);
+            machine.setRotor(4, 7, 1);
+        }
+        assertEquals(M.convert(msg), C.convert(msg));
+        for (Machine machine : new Machine[] {M, C}) {
+            machine.setMachineAlphabet("BCDE");
+        }
+        assertEquals(M.convert(msg), C.convert(msg));
+        for (Machine machine : new Machine[] {M, C}) {
+            machine.advanceBy(1000);
+        }
+        assertEquals(M.convert(msg), C.convert(msg));
+    }
 
 }
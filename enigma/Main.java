@@ -1,11 +1,35 @@
 package enigma;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.SocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static enigma.EnigmaException.error;
 
@@ -26,6 +50,32 @@ public final class Main {
      * file for processed messages.  Otherwise, output goes to the
      * standard output. Exits normally if there are no errors in the input;
      * otherwise with code 1.
+     * ARGS may be preceded by options.  With "--mmap", the input and
+     * output files must both be given; the input file is memory-mapped
+     * and the output is written through a direct buffer.  If the
+     * alphabet and the default encoding are ASCII, message lines then go
+     * from input to output as bytes (see AsciiConverter).  With
+     * "--parallel" or "--parallel=N", independent sections of the input
+     * are converted on all available processors, or on N threads.
+     * With "--compile", the machine converts through cached tables (see
+     * CompiledMachine).  With "--keystream" or "--keystream=N", a
+     * machine whose rotating rotors have at most 4096 (or N) positions
+     * between them converts from a precomputed keystream (see
+     * Machine.setKeystreamLimit).  With "--keystream-cache=N", the
+     * first N keystrokes after each settings line are converted from
+     * keystreams kept for the most recently used settings (see
+     * KeystreamCache).  With "--metrics", counts and latencies
+     * (see Metrics) are published as the MBean enigma:type=Metrics and
+     * reported on the standard error when processing ends; with
+     * "--metrics=N", they are also reported every N seconds.  With
+     * "--config-cache=DIR", a configuration is parsed only the first
+     * time it is seen, and read from a snapshot in DIR thereafter (see
+     * ConfigCache).  With "--serve=ADDRESS" and no other arguments, Main
+     * runs a Server on ADDRESS (see Server.address) until it is killed,
+     * serving the configuration files in the current directory, or in
+     * DIR with "--config-dir=DIR"; with "--connect=ADDRESS", the
+     * messages are converted by that server, and the configuration file
+     * must be in its directory.
      */
     public static void main(String... args) {
         try {
@@ -41,25 +91,131 @@ public final class Main {
      * Check ARGS and open the necessary files (see comment on main).
      */
     Main(String[] args) {
+        int first;
+        boolean mmap = false;
+        for (first = 0; first < args.length && args[first].startsWith("--");
+             first += 1) {
+            if (args[first].equals("--mmap")) {
+                mmap = true;
+            } else if (args[first].equals("--parallel")) {
+                _threads = Runtime.getRuntime().availableProcessors();
+            } else if (args[first].startsWith("--parallel=")) {
+                _threads = parseCount(args[first].substring(11),
+                        "thread count");
+            } else if (args[first].equals("--compile")) {
+                _compile = true;
+            } else if (args[first].equals("--keystream")) {
+                _keystreamLimit = KEYSTREAM_LIMIT;
+            } else if (args[first].startsWith("--keystream=")) {
+                _keystreamLimit = parseCount(args[first].substring(12),
+                        "keystream limit");
+            } else if (args[first].startsWith("--keystream-cache=")) {
+                _keystreamCache = new KeystreamCache(
+                    parseCount(args[first].substring(18),
+                               "keystream cache length"),
+                    KEYSTREAM_CACHE_BUDGET);
+            } else if (args[first].equals("--metrics")) {
+                _metricsPeriod = 0;
+            } else if (args[first].startsWith("--metrics=")) {
+                _metricsPeriod = parseCount(args[first].substring(10),
+                        "metrics period");
+            } else if (args[first].startsWith("--config-cache=")) {
+                try {
+                    _cache = new ConfigCache(
+                        Paths.get(args[first].substring(15)));
+                } catch (InvalidPathException excp) {
+                    throw error("bad cache directory: %s",
+                            args[first].substring(15));
+                }
+            } else if (args[first].startsWith("--config-dir=")) {
+                try {
+                    _configDir = Paths.get(args[first].substring(13));
+                } catch (InvalidPathException excp) {
+                    throw error("bad configuration directory: %s",
+                            args[first].substring(13));
+                }
+            } else if (args[first].startsWith("--serve=")) {
+                _listen = Server.address(args[first].substring(8));
+            } else if (args[first].startsWith("--connect=")) {
+                _server = Server.address(args[first].substring(10));
+            } else {
+                throw error("unknown option %s", args[first]);
+            }
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
+        if (_listen != null) {
+            if (args.length != 0 || _server != null) {
+                throw error("--serve takes no other arguments");
+            }
+            return;
+        }
+        if (_server != null && (mmap || _threads > 1)) {
+            throw error("--connect cannot be used with --mmap or --parallel");
+        }
+        if (mmap && args.length != 3) {
+            throw error("--mmap needs configuration, input, and output");
+        }
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        if (_server != null) {
+            _configName = Paths.get(args[0]).toAbsolutePath().toString();
+            _rawInput = args.length > 1 ? getStream(args[1]) : System.in;
+        } else if (_cache != null) {
+            _configText = readAll(args[0]);
+            _config = new Scanner(new ByteArrayInputStream(_configText));
+        } else {
+            _config = getInput(args[0]);
+        }
 
-        if (args.length > 1) {
-            _input = getInput(args[1]);
+        if (_server != null) {
+            _input = null;
+        } else if (args.length > 1) {
+            _input = mmap ? getMappedReader(args[1]) : getReader(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = new LineReader(new InputStreamReader(System.in));
         }
 
-        if (args.length > 2) {
+        if (mmap) {
+            _channelOutput = getChannelOutput(args[2]);
+            _output = _channelOutput;
+        } else if (args.length > 2) {
             _output = getOutput(args[2]);
         } else {
-            _output = System.out;
+            _output = new BufferedWriter(new OutputStreamWriter(System.out),
+                    OUTPUT_BUFFER_SIZE);
         }
     }
 
+    /**
+     * A Main that converts the messages in INPUT with MACHINE, which has
+     * no rotors inserted, sending the results to OUTPUT.
+     */
+    Main(Machine machine, LineReader input, Writer output) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _numRotors = machine.numRotors();
+        _numPawls = machine.numPawls();
+        _input = input;
+        _output = output;
+    }
+
+    /**
+     * Return the positive number given by NUM, which is a WHAT.
+     */
+    private int parseCount(String num, String what) {
+        try {
+            int count = Integer.parseInt(num);
+            if (count > 0) {
+                return count;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through to the error below. */
+        }
+        throw error("bad %s: %s", what, num);
+    }
+
     /**
      * Return a Scanner reading from the file named NAME.
      */
@@ -72,11 +228,72 @@ public final class Main {
     }
 
     /**
-     * Return a PrintStream writing to the file named NAME.
+     * Return the contents of the file named NAME.
+     */
+    private byte[] readAll(String name) {
+        try {
+            return Files.readAllBytes(Paths.get(name));
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /**
+     * Return an InputStream reading from the file named NAME.
+     */
+    private InputStream getStream(String name) {
+        try {
+            return new FileInputStream(name);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /**
+     * Return a LineReader reading from the file named NAME.
      */
-    private PrintStream getOutput(String name) {
+    private LineReader getReader(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new LineReader(new FileReader(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /**
+     * Return a LineReader reading from a memory mapping of the file
+     * named NAME.
+     */
+    private LineReader getMappedReader(String name) {
+        try {
+            return new LineReader(FileChannel.open(Paths.get(name),
+                    StandardOpenOption.READ), Charset.defaultCharset());
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /**
+     * Return a ChannelWriter writing to the file named NAME.
+     */
+    private ChannelWriter getChannelOutput(String name) {
+        try {
+            return new ChannelWriter(FileChannel.open(Paths.get(name),
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING),
+                    Charset.defaultCharset(), OUTPUT_BUFFER_SIZE);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /**
+     * Return a buffered Writer writing to the file named NAME.
+     */
+    private Writer getOutput(String name) {
+        try {
+            return new BufferedWriter(new FileWriter(name),
+                    OUTPUT_BUFFER_SIZE);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -87,64 +304,358 @@ public final class Main {
      * file _config and apply it to the messages in _input, sending the
      * results to _output.
      */
-    private void process() {
-        Machine enigmaMachine = readConfig();
-        if (_input.hasNext("\\*")) {
-            String temp = _input.nextLine();
-            Scanner second = new Scanner(temp);
-            while (second.hasNext() && second.hasNext("\\*")) {
-                String[] newRotors = new String[_numRotors];
-                helper(second, newRotors, _numRotors);
-                enigmaMachine.insertRotors(newRotors);
-                if (!second.hasNext()) {
-                    throw error("No line to encode");
+    void process() {
+        if (_listen != null) {
+            new Server(_configDir, _compile, _keystreamLimit,
+                       _keystreamCache).serve(Server.listen(_listen));
+            return;
+        }
+        if (_server != null) {
+            try {
+                Server.request(_server, _configName, _rawInput, _output);
+            } finally {
+                try {
+                    _output.flush();
+                } catch (IOException excp) {
+                    throw error("could not write output");
                 }
-                String settings = second.next();
-                setUp(enigmaMachine, settings);
-                if (second.hasNext() && !second.hasNext("\\(?.+\\)")) {
-                    enigmaMachine.setMachineAlphabet(second.next());
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        Machine enigmaMachine = _machine != null ? _machine : readConfig();
+        if (_channelOutput != null && _alphabet.ascii()
+                && AsciiConverter.compatible(Charset.defaultCharset())) {
+            _ascii = new AsciiConverter();
+        }
+        ScheduledExecutorService dumps = null;
+        if (_metricsPeriod >= 0) {
+            _metrics = new Metrics(_numRotors);
+            _metrics.parsedConfig(System.nanoTime() - start);
+            enigmaMachine.setMetrics(_metrics);
+            _metrics.register(METRICS_NAME);
+            if (_metricsPeriod > 0) {
+                dumps = startDumps();
+            }
+        }
+        try {
+            if (nextNonBlank() != LineReader.Kind.SETTINGS) {
+                throw error("input has wrong format");
+            }
+            if (!_blanks.isEmpty()) {
+                return;
+            }
+            String settings = _input.toString();
+            if (_threads > 1) {
+                processParallel(enigmaMachine, settings);
+            } else {
+                while (settings != null) {
+                    long sectionStart = startSection();
+                    setUp(enigmaMachine, settings);
+                    settings = processMessage(enigmaMachine);
+                    endSection(sectionStart);
                 }
-                String cycles = "";
-                while (second.hasNext("\\(?.+\\)")) {
-                    cycles += second.next();
+            }
+        } finally {
+            if (_metrics != null) {
+                if (dumps != null) {
+                    dumps.shutdownNow();
                 }
-                Permutation perm = new Permutation(cycles, _alphabet);
-                enigmaMachine.setPlugboard(perm);
-                if (!_input.hasNext()) {
+                System.err.print(_metrics.report());
+                _metrics.unregister();
+            }
+            try {
+                _output.flush();
+            } catch (IOException excp) {
+                throw error("could not write output");
+            }
+        }
+    }
+
+    /**
+     * Return an executor that reports _metrics on the standard error
+     * every _metricsPeriod seconds from a daemon thread.
+     */
+    private ScheduledExecutorService startDumps() {
+        ScheduledExecutorService dumps =
+            Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "enigma-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+        dumps.scheduleAtFixedRate(() -> System.err.print(_metrics.report()),
+                _metricsPeriod, _metricsPeriod, TimeUnit.SECONDS);
+        return dumps;
+    }
+
+    /**
+     * Record the start of a section in _metrics, if there are any, and
+     * return the time at which it started.
+     */
+    private long startSection() {
+        if (_metrics == null) {
+            return 0;
+        }
+        _metrics.settingsLine();
+        return System.nanoTime();
+    }
+
+    /**
+     * Record in _metrics, if there are any, the end of a section started
+     * at time START.
+     */
+    private void endSection(long start) {
+        if (_metrics != null) {
+            _metrics.section(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Convert the sections of input starting with the settings line
+     * SETTINGS on _threads threads, printing the results in order.
+     * Each section is recorded by this thread and converted by a worker
+     * with its own copy of M's rotors.  M itself is only set up from
+     * each settings line, so that errors in settings are found in order
+     * and alphabet rings carry over from section to section as they do
+     * when converting sequentially.  A settings line that leaves some
+     * rotor positions unspecified waits for the preceding sections, so
+     * that those rotors continue from where they were left.
+     */
+    private void processParallel(Machine M, String settings) {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        Machine pristine = M.copy();
+        ThreadLocal<Machine> machines =
+            ThreadLocal.withInitial(pristine::copy);
+        ArrayDeque<Future<Section>> pending =
+            new ArrayDeque<Future<Section>>();
+        try {
+            EnigmaException failure = null;
+            while (settings != null) {
+                startSection();
+                boolean complete;
+                try {
+                    complete = setUp(M, settings);
+                } catch (EnigmaException excp) {
+                    failure = excp;
                     break;
                 }
-                String x = removeWhite(_input.nextLine());
-                if (x.equals("")) {
-                    _output.println();
+                if (!complete) {
+                    writeSections(M, pending, 0);
+                    setUp(M, settings);
                 }
-                if (x.contains("*")) {
-                    break;
+                _section = new Section(settings, M.rotorSettings(),
+                        M.machineAlphabet());
+                try {
+                    settings = processMessage(M);
+                } catch (EnigmaException excp) {
+                    failure = excp;
+                    settings = null;
                 }
-                while (_input.hasNext() && !_input.hasNext("\\*")) {
-                    String answer = enigmaMachine.convert(x);
-                    printMessageLine(answer);
-                    if (_input.hasNext("\\*")) {
-                        break;
-                    }
-                    x = removeWhite(_input.nextLine());
+                Section section = _section;
+                _section = null;
+                pending.add(pool.submit(() ->
+                        runSection(section, machines.get())));
+                writeSections(M, pending, 2 * _threads);
+            }
+            writeSections(M, pending, 0);
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Write the oldest of the sections being computed by PENDING until
+     * at most LIMIT remain, as for writeSection(M, ...).
+     */
+    private void writeSections(Machine M, ArrayDeque<Future<Section>> pending,
+                               int limit) {
+        while (pending.size() > limit) {
+            writeSection(M, pending.removeFirst());
+        }
+    }
+
+    /**
+     * Convert SECTION using M, recording its output and final rotor
+     * positions, or the error that stopped it, in SECTION.  Return
+     * SECTION.
+     */
+    private Section runSection(Section section, Machine M) {
+        long start = _metrics == null ? 0 : System.nanoTime();
+        try {
+            setUp(M, section.settings());
+            M.setRotors(section.positions());
+            M.setMachineAlphabet(section.rings());
+            char[] text = section.text();
+            GroupWriter groups = new GroupWriter(section.output());
+            int pos = 0;
+            for (int k = 0; k < section.size(); k++) {
+                int len = section.length(k);
+                if (len == Section.NEWLINE) {
+                    newLine(section.output());
+                } else {
+                    printMessageLine(groups, M, text, pos, len);
+                    pos += len;
                 }
-                String answer = enigmaMachine.convert(x);
-                printMessageLine(answer);
-                if (_input.hasNextLine()) {
-                    temp = _input.nextLine();
-                    while (temp.isEmpty()) {
-                        _output.println();
-                        if (_input.hasNextLine()) {
-                            temp = _input.nextLine();
-                        } else {
-                            break;
-                        }
+            }
+            section.setFinalPositions(M.rotorNames(), M.rotorSettings());
+        } catch (RuntimeException excp) {
+            section.setError(excp);
+        }
+        endSection(start);
+        return section;
+    }
+
+    /**
+     * Wait for the section computed by RESULT, print its output, and
+     * throw the error that stopped it, if any.  Otherwise, set the
+     * rotors of M to where the section left them.
+     */
+    private void writeSection(Machine M, Future<Section> result) {
+        Section section;
+        try {
+            section = result.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            throw error("conversion failed: %s", excp.getCause());
+        }
+        try {
+            section.output().writeTo(_output);
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+        if (section.error() != null) {
+            throw section.error();
+        }
+        M.setAvailableRotors(section.finalNames(), section.finalPositions());
+    }
+
+    /**
+     * Convert and print the message following a settings line using M.
+     * Return the next settings line, or null if processing should stop.
+     * Blank lines before the first message line, between message lines,
+     * and after the last one are treated as the original line-at-a-time
+     * reader did, so that output is unchanged.
+     */
+    private String processMessage(Machine M) {
+        LineReader.Kind kind = nextNonBlank();
+        if (kind == LineReader.Kind.EOF) {
+            return null;
+        }
+        if (_blanks.isEmpty()) {
+            if (_input.contains('*')) {
+                return null;
+            }
+        } else if (removeWhite(_blanks.peekFirst()).isEmpty()) {
+            emptyLine();
+        }
+        if (kind == LineReader.Kind.SETTINGS) {
+            blankMessage(M, _blanks.removeFirst());
+        }
+        while (kind == LineReader.Kind.MESSAGE) {
+            for (String blank : _blanks) {
+                blankMessage(M, blank);
+            }
+            _blanks.clear();
+            if (_ascii != null && _section == null && _input.ascii()) {
+                asciiMessage(M);
+            } else {
+                char[] line = _input.buffer();
+                int len = 0;
+                for (int i = 0; i < _input.length(); i++) {
+                    if (line[i] != ' ') {
+                        line[len] = line[i];
+                        len += 1;
                     }
-                    second = new Scanner(temp);
                 }
+                message(M, line, len);
+            }
+            kind = nextNonBlank();
+        }
+        for (String blank : _blanks) {
+            if (!blank.isEmpty()) {
+                return null;
             }
+            emptyLine();
+        }
+        _blanks.clear();
+        return kind == LineReader.Kind.SETTINGS ? _input.toString() : null;
+    }
+
+    /**
+     * Convert and print the first LEN characters of LINE using M, or
+     * record them in _section if there is one.
+     */
+    private void message(Machine M, char[] line, int len) {
+        if (_section != null) {
+            _section.addLine(line, len);
         } else {
-            throw error("input has wrong format");
+            if (_groups == null) {
+                _groups = new GroupWriter(_output);
+            }
+            printMessageLine(_groups, M, line, 0, len);
+        }
+    }
+
+    /**
+     * Convert and print the current line of _input, a message line read
+     * as ASCII bytes, using M, without decoding it into chars.
+     */
+    private void asciiMessage(Machine M) {
+        int len = _input.length();
+        if (_asciiLine.length < AsciiConverter.maxOutput(len)) {
+            _asciiLine = new byte[2 * AsciiConverter.maxOutput(len)];
+        }
+        int n = _ascii.convertLine(M, _input.bytes(), 0, len, _asciiLine, 0);
+        try {
+            _channelOutput.writeBytes(_asciiLine, 0, n);
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+        if (_metrics != null) {
+            _metrics.wrote(n);
+        }
+    }
+
+    /**
+     * Treat the blank line BLANK as a message line for M.
+     */
+    private void blankMessage(Machine M, String blank) {
+        char[] line = removeWhite(blank).toCharArray();
+        message(M, line, line.length);
+    }
+
+    /**
+     * Print an empty line, or record one in _section if there is one.
+     */
+    private void emptyLine() {
+        if (_section != null) {
+            _section.addNewLine();
+        } else {
+            newLine(_output);
+        }
+    }
+
+    /**
+     * Read lines from _input, saving blank ones in _blanks, until
+     * reaching a settings or message line or the end of input.  Return
+     * the kind of line reached.
+     */
+    private LineReader.Kind nextNonBlank() {
+        while (true) {
+            LineReader.Kind kind = _input.next();
+            if (_metrics != null && kind != LineReader.Kind.EOF) {
+                _metrics.read(_input.length() + 1);
+            }
+            if (kind != LineReader.Kind.EMPTY
+                    && kind != LineReader.Kind.BLANK) {
+                return kind;
+            }
+            _blanks.add(_input.toString());
         }
     }
 
@@ -152,21 +663,19 @@ public final class Main {
      * Return a string that is STR with no spaces.
      */
     String removeWhite(String str) {
-        String changer = "";
+        StringBuilder changer = new StringBuilder();
         for (int i = 0; i < str.length(); i++) {
-            if (str.charAt(i) == ' ') {
-                continue;
-            } else {
-                changer += str.charAt(i);
+            if (str.charAt(i) != ' ') {
+                changer.append(str.charAt(i));
             }
         }
-        return changer;
+        return changer.toString();
     }
 
     /**
      * Helper function taking in SECOND, NEWROTORS, and NUMROTORS.
      */
-    void helper(Scanner second, String[] newRotors, int numRotors) {
+    static void helper(Scanner second, String[] newRotors, int numRotors) {
         second.next();
         for (int i = 0; i < numRotors; i++) {
             newRotors[i] = second.next();
@@ -175,44 +684,77 @@ public final class Main {
 
     /**
      * Return an Enigma machine configured from the contents of configuration
-     * file _config.
+     * file _config, or from its snapshot in _cache if there is one.
      */
     private Machine readConfig() {
+        ConfigCache.Config config = null;
+        if (_cache != null) {
+            config = _cache.load(_configText);
+        }
+        if (config == null) {
+            config = parseConfig(_config);
+            if (_cache != null) {
+                _cache.store(_configText, config);
+            }
+        }
+        _alphabet = config.alphabet();
+        _numRotors = config.numRotors();
+        _numPawls = config.pawls();
+        Machine machine = _compile
+            ? new CompiledMachine(_alphabet, _numRotors, _numPawls,
+                    config.rotors(), TABLE_CAPACITY)
+            : new Machine(_alphabet, _numRotors, _numPawls, config.rotors());
+        machine.setKeystreamLimit(_keystreamLimit);
+        if (_keystreamCache != null
+                && !_keystreamCache.fits(_alphabet.size())) {
+            throw error("keystream cache length %d is too large for a "
+                        + "%d-character alphabet", _keystreamCache.length(),
+                        _alphabet.size());
+        }
+        machine.setKeystreamCache(_keystreamCache);
+        return machine;
+    }
+
+    /**
+     * Return the configuration read from CONFIG.
+     */
+    static ConfigCache.Config parseConfig(Scanner config) {
         try {
-            _alphabet = new Alphabet(_config.next());
-            int numrotors = _config.nextInt();
-            _numRotors = numrotors;
-            int pawls = _config.nextInt();
-            _numPawls = pawls;
+            Alphabet alphabet = new Alphabet(config.next());
+            int numrotors = config.nextInt();
+            int pawls = config.nextInt();
             ArrayList<Rotor> allRotors = new ArrayList<Rotor>();
-            while (_config.hasNext()) {
-                allRotors.add(readRotor());
+            while (config.hasNext()) {
+                allRotors.add(readRotor(config, alphabet));
             }
-            return new Machine(_alphabet, numrotors, pawls, allRotors);
+            return new ConfigCache.Config(alphabet, numrotors, pawls,
+                    allRotors);
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
         }
     }
 
     /**
-     * Return a rotor, reading its description from _config.
+     * Return a rotor with alphabet ALPHABET, reading its description
+     * from CONFIG.
      */
-    private Rotor readRotor() {
+    private static Rotor readRotor(Scanner config, Alphabet alphabet) {
         try {
-            String name = _config.next();
-            String middle = _config.next();
-            String cycles = "";
-            while (_config.hasNext("\\(?.+\\)")) {
-                cycles += _config.next();
+            String name = config.next();
+            String middle = config.next();
+            StringBuilder cycles = new StringBuilder();
+            while (config.hasNext("\\(?.+\\)")) {
+                cycles.append(config.next());
             }
+            Permutation perm = new Permutation(cycles, 0, cycles.length(),
+                    alphabet);
             if (middle.charAt(0) == 'M') {
                 String notches = middle.substring(1);
-                return new MovingRotor(name,
-                        new Permutation(cycles, _alphabet), notches);
+                return new MovingRotor(name, perm, notches);
             } else if (middle.charAt(0) == 'N') {
-                return new FixedRotor(name, new Permutation(cycles, _alphabet));
+                return new FixedRotor(name, perm);
             } else if (middle.charAt(0) == 'R') {
-                return new Reflector(name, new Permutation(cycles, _alphabet));
+                return new Reflector(name, perm);
             } else {
                 throw error("Wrong Format");
             }
@@ -224,34 +766,95 @@ public final class Main {
     /**
      * Set M according to the specification given on SETTINGS,
      * which must have the format specified in the assignment.
+     * Return true iff SETTINGS gives the position of every rotor, so
+     * that M no longer depends on previous messages.
      */
-    private void setUp(Machine M, String settings) {
-        M.setRotors(settings);
+    static boolean setUp(Machine M, String settings) {
+        Scanner second = new Scanner(settings);
+        String[] newRotors = new String[M.numRotors()];
+        helper(second, newRotors, M.numRotors());
+        M.insertRotors(newRotors);
+        if (!second.hasNext()) {
+            throw error("No line to encode");
+        }
+        String positions = second.next();
+        M.setRotors(positions);
+        if (second.hasNext() && !second.hasNext("\\(?.+\\)")) {
+            M.setMachineAlphabet(second.next());
+        }
+        StringBuilder cycles = new StringBuilder();
+        while (second.hasNext("\\(?.+\\)")) {
+            cycles.append(second.next());
+        }
+        M.setPlugboard(new Permutation(cycles, 0, cycles.length(),
+                M.alphabet()));
+        return positions.length() == M.numRotors() - 1;
     }
 
     /**
-     * Print MSG in groups of five (except that the last group may
-     * have fewer letters).
+     * Convert the LEN characters of MSG starting at OFF using M and print
+     * them with GROUPS in groups of five (except that the last group may
+     * have fewer letters), followed by a newline.  Prints nothing if LEN
+     * is 0.
      */
-    private void printMessageLine(String msg) {
-        String temp = "";
-        for (int i = 0; i < msg.length(); i++) {
-            temp += msg.charAt(i);
-            if (temp.length() == 5) {
-                _output.print(temp);
-                temp = "";
-                if (i == msg.length() - 1) {
-                    _output.println();
-                } else {
-                    _output.print(" ");
-                }
-            } else if (i == msg.length() - 1) {
-                _output.print(temp);
-                _output.println();
+    private void printMessageLine(GroupWriter groups, Machine M,
+                                  char[] msg, int off, int len) {
+        try {
+            groups.convert(M, msg, off, len);
+            int printed = groups.endLine();
+            if (_metrics != null && printed > 0) {
+                _metrics.wrote(printed);
             }
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /**
+     * Print an empty line on OUT.
+     */
+    private void newLine(Writer out) {
+        try {
+            out.write(LINE_SEPARATOR);
+            if (_metrics != null) {
+                _metrics.wrote(LINE_SEPARATOR.length());
+            }
+        } catch (IOException excp) {
+            throw error("could not write output");
         }
     }
 
+    /**
+     * Size of the buffer in front of _output.
+     */
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Number of tables kept by a CompiledMachine.
+     */
+    private static final int TABLE_CAPACITY = 1 << 12;
+
+    /**
+     * Default limit on the rotor positions of a machine converting from
+     * a keystream.
+     */
+    private static final int KEYSTREAM_LIMIT = 1 << 12;
+
+    /**
+     * Number of ints of keystream kept by a keystream cache (64 MB).
+     */
+    private static final long KEYSTREAM_CACHE_BUDGET = 1 << 24;
+
+    /**
+     * Name of the MBean publishing _metrics.
+     */
+    private static final String METRICS_NAME = "enigma:type=Metrics";
+
+    /**
+     * The platform line separator, as printed by PrintStream.println.
+     */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
     /**
      * Alphabet used in this machine.
      */
@@ -260,17 +863,82 @@ public final class Main {
     /**
      * Source of input messages.
      */
-    private Scanner _input;
+    private LineReader _input;
+
+    /**
+     * Blank lines read from _input ahead of the current line.
+     */
+    private final ArrayDeque<String> _blanks = new ArrayDeque<String>();
 
     /**
      * Source of machine configuration.
      */
     private Scanner _config;
 
+    /**
+     * The machine to use instead of one configured from _config, or
+     * null.
+     */
+    private Machine _machine;
+
+    /**
+     * Address on which to serve requests, or null.
+     */
+    private SocketAddress _listen;
+    /**
+     * Directory of the configuration files a Server may read.
+     */
+    private Path _configDir = Paths.get("");
+
+    /**
+     * Address of the server converting messages, or null.
+     */
+    private SocketAddress _server;
+
+    /**
+     * Absolute name of the configuration file, when messages are
+     * converted by _server.
+     */
+    private String _configName;
+
+    /**
+     * Source of input to send to _server.
+     */
+    private InputStream _rawInput;
+
+    /**
+     * Snapshots of parsed configurations, or null.
+     */
+    private ConfigCache _cache;
+
+    /**
+     * Text of the configuration file, when it is looked up in _cache.
+     */
+    private byte[] _configText;
+
     /**
      * File for encoded/decoded messages.
      */
-    private PrintStream _output;
+    private Writer _output;
+    /**
+     * Formatter of message lines onto _output, created when first
+     * needed.
+     */
+    private GroupWriter _groups;
+    /**
+     * _output, if it is a ChannelWriter (with --mmap), or null.
+     */
+    private ChannelWriter _channelOutput;
+    /**
+     * Converter of message lines read as ASCII bytes, or null if they
+     * are read as chars.  Used with --mmap when the alphabet and the
+     * default encoding allow.
+     */
+    private AsciiConverter _ascii;
+    /**
+     * Output of _ascii for the current line.
+     */
+    private byte[] _asciiLine = new byte[0];
 
     /**
      * Number of rotors.
@@ -281,4 +949,39 @@ public final class Main {
      * Number of pawls.
      */
     private int _numPawls;
+
+    /**
+     * Number of threads converting messages.
+     */
+    private int _threads = 1;
+
+    /**
+     * True iff messages are converted by a CompiledMachine.
+     */
+    private boolean _compile;
+
+    /**
+     * Keystream limit of the machine (see Machine.setKeystreamLimit).
+     */
+    private int _keystreamLimit;
+    /**
+     * Keystream cache shared by all machines, or null.
+     */
+    private KeystreamCache _keystreamCache;
+
+    /**
+     * The section being recorded when converting in parallel, or null.
+     */
+    private Section _section;
+
+    /**
+     * Seconds between reports of _metrics, 0 to report them only at the
+     * end, or -1 for no metrics.
+     */
+    private int _metricsPeriod = -1;
+
+    /**
+     * Where the machines and I record what we do, or null.
+     */
+    private Metrics _metrics;
 }
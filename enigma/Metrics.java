@@ -0,0 +1,433 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * Counters and latency histograms describing the work done by machines
+ * and by Main.  Metrics are opt-in: a machine with no Metrics checks a
+ * null field and does nothing more.  When they are on, the counters
+ * are LongAdders, which are striped across threads, so that the
+ * machines converting sections in parallel can share one Metrics
+ * without contending for it.
+ *
+ * @author Ryan Johnson
+ */
+class Metrics {
+
+    /**
+     * Metrics for machines with up to SLOTS rotor slots.
+     */
+    Metrics(int slots) {
+        _advances = new LongAdder[slots];
+        for (int i = 0; i < slots; i++) {
+            _advances[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record the conversion of N characters.
+     */
+    void converted(int n) {
+        _converted.add(n);
+    }
+
+    /**
+     * Record the processing of a settings line.
+     */
+    void settingsLine() {
+        _settingsLines.increment();
+    }
+
+    /**
+     * Record one advance of the rotor in SLOT, which is a double step
+     * iff DOUBLESTEP (that is, the rotor advanced because it was at its
+     * own notch rather than because the rotor to its right was).
+     */
+    void advanced(int slot, boolean doubleStep) {
+        if (slot < _advances.length) {
+            _advances[slot].increment();
+        }
+        if (doubleStep) {
+            _doubleSteps.increment();
+        }
+    }
+
+    /**
+     * Record that reading the configuration took NANOS nanoseconds.
+     */
+    void parsedConfig(long nanos) {
+        _configNanos.add(nanos);
+    }
+
+    /**
+     * Record reading N characters of input.
+     */
+    void read(long n) {
+        _charsIn.add(n);
+    }
+
+    /**
+     * Record writing N characters of output.
+     */
+    void wrote(long n) {
+        _charsOut.add(n);
+    }
+
+    /**
+     * Record that converting one section (a settings line and its
+     * message) took NANOS nanoseconds.
+     */
+    void section(long nanos) {
+        _sections.record(nanos);
+    }
+
+    /**
+     * Return the number of characters converted.
+     */
+    long converted() {
+        return _converted.sum();
+    }
+
+    /**
+     * Return the number of settings lines processed.
+     */
+    long settingsLines() {
+        return _settingsLines.sum();
+    }
+
+    /**
+     * Return the number of advances of the rotor in SLOT.
+     */
+    long advances(int slot) {
+        return _advances[slot].sum();
+    }
+
+    /**
+     * Return the number of double steps.
+     */
+    long doubleSteps() {
+        return _doubleSteps.sum();
+    }
+
+    /**
+     * Return the histogram of section latencies, in nanoseconds.
+     */
+    Histogram sections() {
+        return _sections;
+    }
+
+    /**
+     * Return the current value of each metric by name, in the order
+     * they are reported.
+     */
+    Map<String, Long> values() {
+        LinkedHashMap<String, Long> values = new LinkedHashMap<String, Long>();
+        values.put("CharactersConverted", converted());
+        values.put("SettingsLines", settingsLines());
+        for (int i = 0; i < _advances.length; i++) {
+            values.put("Advances" + i, advances(i));
+        }
+        values.put("DoubleSteps", doubleSteps());
+        values.put("ConfigParseNanos", _configNanos.sum());
+        values.put("CharactersIn", _charsIn.sum());
+        values.put("CharactersOut", _charsOut.sum());
+        values.put("Sections", _sections.count());
+        values.put("SectionNanosMean", (long) _sections.mean());
+        values.put("SectionNanosP50", _sections.percentile(50));
+        values.put("SectionNanosP90", _sections.percentile(90));
+        values.put("SectionNanosP99", _sections.percentile(99));
+        values.put("SectionNanosMax", _sections.max());
+        return values;
+    }
+
+    /**
+     * Return a report of my values, one "NAME VALUE" per line.
+     */
+    String report() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Long> value : values().entrySet()) {
+            report.append(value.getKey()).append(' ')
+                .append(value.getValue()).append(System.lineSeparator());
+        }
+        return report.toString();
+    }
+
+    /**
+     * Make my values available as the attributes of the MBean NAME on
+     * the platform MBean server.
+     */
+    void register(String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            _name = new ObjectName(name);
+            server.registerMBean(new Bean(), _name);
+        } catch (JMException excp) {
+            _name = null;
+            throw error("could not register %s: %s", name, excp.getMessage());
+        }
+    }
+
+    /**
+     * Remove the MBean registered by register, if any.
+     */
+    void unregister() {
+        if (_name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(_name);
+        } catch (JMException excp) {
+            /* Already gone. */
+        }
+        _name = null;
+    }
+
+    /**
+     * A histogram of non-negative long values in the style of
+     * HdrHistogram: values below 2**SUB_BITS are counted exactly, and
+     * larger values in buckets whose width is 2**-SUB_BITS of their
+     * magnitude, so that every count is precise to about 3% however
+     * large its value.  Recording is lock-free.
+     */
+    static class Histogram {
+
+        /**
+         * Record VALUE, treating a negative VALUE as 0.
+         */
+        void record(long value) {
+            value = Math.max(value, 0);
+            _counts.incrementAndGet(bucket(value));
+            _count.increment();
+            _total.add(value);
+            _max.accumulate(value);
+        }
+
+        /**
+         * Return the number of values recorded.
+         */
+        long count() {
+            return _count.sum();
+        }
+
+        /**
+         * Return the largest value recorded, or 0 if there are none.
+         */
+        long max() {
+            return _max.get();
+        }
+
+        /**
+         * Return the mean of the values recorded, or 0 if there are
+         * none.
+         */
+        double mean() {
+            long count = count();
+            return count == 0 ? 0 : (double) _total.sum() / count;
+        }
+
+        /**
+         * Return a value that at least P percent of the values recorded
+         * do not exceed, to the precision of my buckets, or 0 if there
+         * are none.
+         */
+        long percentile(double p) {
+            long count = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                count += _counts.get(b);
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(p / 100 * count));
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += _counts.get(b);
+                if (seen >= rank) {
+                    return Math.min(highest(b), max());
+                }
+            }
+            return max();
+        }
+
+        /**
+         * Return the bucket counting VALUE >= 0.
+         */
+        static int bucket(long value) {
+            if (value < SUB) {
+                return (int) value;
+            }
+            int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value)
+                - SUB_BITS;
+            return (shift + 1) * SUB + (int) (value >>> shift) - SUB;
+        }
+
+        /**
+         * Return the largest value counted in BUCKET.
+         */
+        static long highest(int bucket) {
+            int shift = bucket / SUB - 1;
+            if (shift <= 0) {
+                return bucket;
+            }
+            long lowest = (long) (bucket % SUB + SUB) << shift;
+            return lowest + (1L << shift) - 1;
+        }
+
+        /**
+         * Number of bits of each value kept by its bucket, beyond its
+         * leading 1.
+         */
+        static final int SUB_BITS = 5;
+        /**
+         * Number of buckets for each power of two.
+         */
+        private static final int SUB = 1 << SUB_BITS;
+        /**
+         * Number of buckets.
+         */
+        private static final int BUCKETS = (Long.SIZE - SUB_BITS + 1) * SUB;
+
+        /**
+         * Count of values in each bucket.
+         */
+        private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+        /**
+         * Number of values recorded.
+         */
+        private final LongAdder _count = new LongAdder();
+        /**
+         * Sum of the values recorded.
+         */
+        private final LongAdder _total = new LongAdder();
+        /**
+         * Largest value recorded.
+         */
+        private final LongAccumulator _max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * My values as the read-only attributes of an MBean.
+     */
+    private class Bean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute)
+            throws AttributeNotFoundException {
+            Long value = values().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute)
+            throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName()
+                                                 + " is read-only");
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Long> values = values();
+            AttributeList result = new AttributeList();
+            for (String name : attributes) {
+                if (values.containsKey(name)) {
+                    result.add(new Attribute(name, values.get(name)));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Set none of ATTRIBUTES, since all my attributes are read-only,
+         * and so return the empty list of attributes that were set.
+         */
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        /**
+         * Fail to invoke ACTION with PARAMS and SIGNATURE, since I have
+         * no operations.
+         */
+        @Override
+        public Object invoke(String action, Object[] params,
+                             String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(action),
+                                          "no operation " + action);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            Map<String, Long> values = values();
+            MBeanAttributeInfo[] attributes =
+                new MBeanAttributeInfo[values.size()];
+            int i = 0;
+            for (String name : values.keySet()) {
+                attributes[i] = new MBeanAttributeInfo(name, "long", name,
+                                                       true, false, false);
+                i += 1;
+            }
+            return new MBeanInfo(Metrics.class.getName(),
+                                 "Enigma machine metrics", attributes,
+                                 null, null, null);
+        }
+    }
+
+    /**
+     * Characters converted.
+     */
+    private final LongAdder _converted = new LongAdder();
+    /**
+     * Settings lines processed.
+     */
+    private final LongAdder _settingsLines = new LongAdder();
+    /**
+     * Advances of the rotor in each slot.
+     */
+    private final LongAdder[] _advances;
+    /**
+     * Double steps by any rotor.
+     */
+    private final LongAdder _doubleSteps = new LongAdder();
+    /**
+     * Nanoseconds spent reading configurations.
+     */
+    private final LongAdder _configNanos = new LongAdder();
+    /**
+     * Characters of input read.
+     */
+    private final LongAdder _charsIn = new LongAdder();
+    /**
+     * Characters of output written.
+     */
+    private final LongAdder _charsOut = new LongAdder();
+    /**
+     * Latencies of sections, in nanoseconds.
+     */
+    private final Histogram _sections = new Histogram();
+    /**
+     * Name of my MBean, or null if it is not registered.
+     */
+    private ObjectName _name;
+
+}
@@ -0,0 +1,93 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import java.lang.management.ManagementFactory;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * The suite of all JUnit tests for the Metrics class.
+ *
+ * @author Ryan Johnson
+ */
+public class MetricsTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testBuckets() {
+        for (long v = 0; v < 1 << 12; v++) {
+            int b = Metrics.Histogram.bucket(v);
+            assertTrue(v <= Metrics.Histogram.highest(b));
+            assertTrue(b == 0 || Metrics.Histogram.highest(b - 1) < v);
+        }
+        long big = Long.MAX_VALUE;
+        assertEquals(big,
+                     Metrics.Histogram.highest(Metrics.Histogram.bucket(big)));
+    }
+
+    @Test
+    public void testHistogram() {
+        Metrics.Histogram h = new Metrics.Histogram();
+        assertEquals(0, h.percentile(50));
+        for (long v = 1; v <= 1000; v++) {
+            h.record(v * 1000);
+        }
+        assertEquals(1000, h.count());
+        assertEquals(1000000, h.max());
+        assertEquals(500500, h.mean(), 1e-6);
+        assertEquals(500000, h.percentile(50), 500000 / 32);
+        assertEquals(990000, h.percentile(99), 990000 / 32);
+        assertEquals(1000000, h.percentile(100));
+    }
+
+    @Test
+    public void testReport() {
+        Metrics metrics = new Metrics(2);
+        metrics.settingsLine();
+        metrics.advanced(1, true);
+        metrics.read(12);
+        metrics.section(100);
+        String report = metrics.report();
+        assertTrue(report.contains("SettingsLines 1"));
+        assertTrue(report.contains("Advances1 1"));
+        assertTrue(report.contains("DoubleSteps 1"));
+        assertTrue(report.contains("CharactersIn 12"));
+        assertTrue(report.contains("SectionNanosMax 100"));
+        metrics.register("enigma:type=MetricsTest");
+        try {
+            ObjectName name = new ObjectName("enigma:type=MetricsTest");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1L, server.getAttribute(name, "SettingsLines"));
+            AttributeList values = new AttributeList();
+            values.add(new Attribute("SettingsLines", 5L));
+            assertTrue(server.setAttributes(name, values).isEmpty());
+            assertEquals(1L, server.getAttribute(name, "SettingsLines"));
+            try {
+                server.invoke(name, "reset", null, null);
+                fail("operation invoked");
+            } catch (ReflectionException excp) {
+                assertTrue(excp.getTargetException()
+                           instanceof NoSuchMethodException);
+            }
+        } catch (JMException excp) {
+            fail(excp.getMessage());
+        } finally {
+            metrics.unregister();
+        }
+    }
+
+}
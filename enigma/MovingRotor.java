@@ -12,12 +12,22 @@ class MovingRotor extends Rotor {
     /**
      * A rotor named NAME whose permutation in its default setting is
      * PERM, and whose notches are at the positions indicated in NOTCHES.
-     * The Rotor is initally in its 0 setting (first character of its
-     * alphabet).
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        _notches = notches;
+        _notchAt = new boolean[size()];
+        for (int i = 0; i < notches.length(); i++) {
+            _notchAt[alphabet().toInt(notches.charAt(i))] = true;
+        }
+        _stepsToNotch = new int[size()];
+        int next = -1;
+        for (int k = 2 * size() - 1; k >= 0; k--) {
+            int posn = k % size();
+            if (_notchAt[posn]) {
+                next = k;
+            }
+            _stepsToNotch[posn] = next < 0 ? -1 : next - k;
+        }
     }
 
     @Override
@@ -26,25 +36,22 @@ class MovingRotor extends Rotor {
     }
 
     @Override
-    boolean atNotch() {
-        int temp = 0;
-        for (int i = 0; i < _notches.length(); i++) {
-            if (setting() == alphabet().toInt(_notches.charAt(i))) {
-                temp = 1;
-            }
-        }
-        return temp == 1;
+    boolean notchAt(int posn) {
+        return _notchAt[posn];
     }
 
     @Override
-    void advance() {
-        int newSetting = permutation().wrap(setting() + 1);
-        set(newSetting);
+    int stepsToNotch(int posn) {
+        return _stepsToNotch[posn];
     }
 
     /**
-     * My notch.
+     * Whether each setting of mine is a notch.
+     */
+    private final boolean[] _notchAt;
+    /**
+     * Value of stepsToNotch for each of my settings.
      */
-    private String _notches;
+    private final int[] _stepsToNotch;
 
 }
@@ -20,7 +20,7 @@ public class MovingRotorTest {
 
     /* ***** TESTING UTILITIES ***** */
 
-    private Rotor rotor;
+    private PositionedRotor rotor;
     private String alpha = UPPER_STRING;
 
     /** Check that rotor has an alphabet whose size is that of
@@ -45,8 +45,9 @@ public class MovingRotorTest {
      *  specified by the NAME entry in ROTORS, with given NOTCHES. */
     private void setRotor(String name, HashMap<String, String> rotors,
                           String notches) {
-        rotor = new MovingRotor(name, new Permutation(rotors.get(name), UPPER),
-                                notches);
+        rotor = new PositionedRotor(
+            new MovingRotor(name, new Permutation(rotors.get(name), UPPER),
+                            notches));
     }
 
     /* ***** TESTS ***** */
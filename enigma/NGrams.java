@@ -0,0 +1,178 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * Log probabilities of the n-grams (strings of n characters) of some
+ * language, for scoring trial decryptions.  The probabilities are held
+ * in one array indexed by the n-gram read as a number in base alphabet
+ * size, so that a text is scored by rolling that index along it.
+ *
+ * @author Ryan Johnson
+ */
+class NGrams {
+
+    /**
+     * The n-grams of length N over ALPHA whose counts are read from
+     * COUNTS, one per line as an n-gram and a count separated by
+     * whitespace.
+     */
+    NGrams(Alphabet alpha, int n, Reader counts) {
+        this(alpha, n);
+        BufferedReader lines = new BufferedReader(counts);
+        try {
+            for (String line = lines.readLine(); line != null;
+                 line = lines.readLine()) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length == 1 && fields[0].isEmpty()) {
+                    continue;
+                }
+                if (fields.length != 2 || fields[0].length() != n) {
+                    throw error("bad n-gram count: %s", line);
+                }
+                try {
+                    _counts[index(fields[0])] += Long.parseLong(fields[1]);
+                } catch (NumberFormatException excp) {
+                    throw error("bad n-gram count: %s", line);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read n-gram counts");
+        }
+        finish();
+    }
+
+    /**
+     * Return the n-grams of length N over ALPHA counted in TEXT.
+     * Characters of TEXT not in ALPHA separate n-grams.
+     */
+    static NGrams train(Alphabet alpha, int n, CharSequence text) {
+        NGrams result = new NGrams(alpha, n);
+        int index = 0, run = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (!alpha.contains(ch)) {
+                run = 0;
+                continue;
+            }
+            index = index % result._high * alpha.size() + alpha.toInt(ch);
+            run += 1;
+            if (run >= n) {
+                result._counts[index] += 1;
+            }
+        }
+        result.finish();
+        return result;
+    }
+
+    /**
+     * An empty table of n-grams of length N over ALPHA.
+     */
+    private NGrams(Alphabet alpha, int n) {
+        if (n < 1) {
+            throw error("bad n-gram length: %d", n);
+        }
+        long entries = 1;
+        for (int i = 0; i < n; i++) {
+            entries *= alpha.size();
+            if (entries > MAX_ENTRIES) {
+                throw error("too many %d-grams", n);
+            }
+        }
+        _alphabet = alpha;
+        _n = n;
+        _high = (int) (entries / alpha.size());
+        _counts = new long[(int) entries];
+        _logs = new float[(int) entries];
+    }
+
+    /**
+     * Return the length of my n-grams.
+     */
+    int n() {
+        return _n;
+    }
+
+    /**
+     * Return the sum of the log probabilities of the n-grams in the
+     * first LEN characters of TEXT, given as indices in my alphabet.
+     */
+    double score(int[] text, int len) {
+        int size = _alphabet.size();
+        int index = 0;
+        double score = 0;
+        for (int i = 0; i < len; i++) {
+            index = index % _high * size + text[i];
+            if (i >= _n - 1) {
+                score += _logs[index];
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Return the index in _logs of GRAM.
+     */
+    private int index(String gram) {
+        int index = 0;
+        for (int i = 0; i < gram.length(); i++) {
+            if (!_alphabet.contains(gram.charAt(i))) {
+                throw error("bad n-gram: %s", gram);
+            }
+            index = index * _alphabet.size() + _alphabet.toInt(gram.charAt(i));
+        }
+        return index;
+    }
+
+    /**
+     * Turn _counts into log probabilities, giving n-grams never seen a
+     * probability of a tenth of one occurrence, and drop _counts.
+     */
+    private void finish() {
+        long total = 0;
+        for (long count : _counts) {
+            total += count;
+        }
+        if (total == 0) {
+            throw error("no n-grams");
+        }
+        double floor = Math.log10(0.1 / total);
+        for (int i = 0; i < _logs.length; i++) {
+            _logs[i] = _counts[i] == 0 ? (float) floor
+                : (float) Math.log10((double) _counts[i] / total);
+        }
+        _counts = null;
+    }
+
+    /**
+     * Largest number of n-grams in a table.
+     */
+    private static final long MAX_ENTRIES = 1 << 24;
+
+    /**
+     * Alphabet of my n-grams.
+     */
+    private final Alphabet _alphabet;
+    /**
+     * Length of my n-grams.
+     */
+    private final int _n;
+    /**
+     * Number of (n-1)-grams.  An index modulo this drops its first
+     * character.
+     */
+    private final int _high;
+    /**
+     * Count of each n-gram, until finished.
+     */
+    private long[] _counts;
+    /**
+     * Log probability of each n-gram.
+     */
+    private final float[] _logs;
+
+}
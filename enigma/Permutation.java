@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /**
@@ -18,58 +20,99 @@ class Permutation {
      * Whitespace is ignored.
      */
     Permutation(String cycles, Alphabet alphabet) {
+        this(cycles, 0, cycles.length(), alphabet);
+    }
+
+    /**
+     * Set this Permutation to that specified by the characters
+     * START..END-1 of CYCLES, in the same notation as above, without
+     * copying them.  Reports unbalanced parentheses, characters outside
+     * a cycle or ALPHABET, and repeated characters, giving their
+     * position in CYCLES.
+     */
+    Permutation(CharSequence cycles, int start, int end, Alphabet alphabet) {
         _alphabet = alphabet;
-        int num = 1;
-        String temp = "";
-        for (int i = 0; i < cycles.length(); i++) {
-            if (cycles.charAt(i) == ')'
-                    || cycles.charAt(i) == ',' || cycles.charAt(i) == ' ') {
-                continue;
-            } else {
-                temp += cycles.charAt(i);
+        _forward = new int[alphabet.size()];
+        _inverse = new int[alphabet.size()];
+        Arrays.fill(_forward, -1);
+        Arrays.fill(_inverse, -1);
+        int open = -1, first = -1, prev = -1;
+        for (int i = start; i < end; i++) {
+            char ch = cycles.charAt(i);
+            if (ch == '(') {
+                if (open >= 0) {
+                    throw error("nested '(' at position %d", i);
+                }
+                open = i;
+                first = prev = -1;
+            } else if (ch == ')') {
+                if (open < 0) {
+                    throw error("unmatched ')' at position %d", i);
+                }
+                if (first >= 0) {
+                    link(prev, first);
+                }
+                open = -1;
+            } else if (!Character.isWhitespace(ch)) {
+                if (open < 0) {
+                    throw error("'%c' at position %d is not in a cycle",
+                            ch, i);
+                }
+                if (!alphabet.contains(ch)) {
+                    throw error("'%c' at position %d is not in the alphabet",
+                            ch, i);
+                }
+                int k = alphabet.toInt(ch);
+                if (_inverse[k] >= 0 || k == first) {
+                    throw error("'%c' at position %d appears more than once",
+                            ch, i);
+                }
+                if (first < 0) {
+                    first = k;
+                } else {
+                    link(prev, k);
+                }
+                prev = k;
             }
         }
-        for (int i = 0; i < temp.length(); i++) {
-            if (temp.charAt(i) == '(' && i != 0 || i != temp.length() - 1) {
-                num += 1;
-            }
+        if (open >= 0) {
+            throw error("unclosed '(' at position %d", open);
         }
-        _cycles = new String[num];
-        int holder = 0;
-        for (int i = 0; i < num; i++) {
-            _cycles[i] = "";
-            for (; holder < temp.length(); holder++) {
-                if (temp.charAt(holder) == '(') {
-                    holder += 1;
-                    break;
-                } else {
-                    _cycles[i] += temp.charAt(holder);
-                }
+        for (int i = 0; i < _forward.length; i++) {
+            if (_forward[i] < 0) {
+                _forward[i] = _inverse[i] = i;
             }
         }
-
     }
 
     /**
-     * Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     * c0c1...cm.
+     * The permutation of ALPHABET taking each index I to FORWARD[I].
+     * FORWARD must contain each index exactly once.
      */
-    private void addCycle(String cycle) {
-        String[] temp = new String[_cycles.length + 1];
-        for (int i = 0; i < temp.length - 1; i++) {
-            temp[i] = _cycles[i];
+    Permutation(int[] forward, Alphabet alphabet) {
+        if (forward.length != alphabet.size()) {
+            throw error("permutation has %d entries, not %d",
+                    forward.length, alphabet.size());
         }
-        String cycle2 = "";
-        for (int i = 0; i < cycle.length(); i++) {
-            if (cycle.charAt(i) == ' '
-                    || cycle.charAt(i) == ')' || cycle.charAt(i) == ',') {
-                continue;
-            } else {
-                cycle2 += cycle.charAt(i);
+        _alphabet = alphabet;
+        _forward = forward.clone();
+        _inverse = new int[forward.length];
+        Arrays.fill(_inverse, -1);
+        for (int i = 0; i < forward.length; i++) {
+            int k = forward[i];
+            if (k < 0 || k >= forward.length || _inverse[k] >= 0) {
+                throw error("not a permutation: %d at %d", k, i);
             }
+            _inverse[k] = i;
         }
-        temp[temp.length - 1] = cycle2;
-        _cycles = temp;
+    }
+
+    /**
+     * Map FROM to TO in this permutation.
+     */
+    private void link(int from, int to) {
+        _forward[from] = to;
+        _inverse[to] = from;
     }
 
     /**
@@ -92,46 +135,26 @@ class Permutation {
 
     /**
      * Return the result of applying this permutation to P modulo the
-     * alphabet size.
+     * alphabet size.  P is wrapped only when it is out of range, so
+     * the usual lookup is a single table load.
      */
     int permute(int p) {
-        int num = wrap(p);
-        char temp;
-        for (String s : _cycles) {
-            for (int i = 0; i < s.length(); i++) {
-                if (_alphabet.toChar(num)
-                        == s.charAt(i) && i != s.length() - 1) {
-                    temp = s.charAt(i + 1);
-                    return _alphabet.toInt(temp);
-                } else if (_alphabet.toChar(num)
-                        == s.charAt(i) && i == s.length() - 1) {
-                    temp = s.charAt(0);
-                    return _alphabet.toInt(temp);
-                }
-            }
+        if (p < 0 || p >= _forward.length) {
+            p = wrap(p);
         }
-        return p;
+        return _forward[p];
     }
 
     /**
      * Return the result of applying the inverse of this permutation
-     * to  C modulo the alphabet size.
+     * to  C modulo the alphabet size.  As for permute, C is wrapped
+     * only when it is out of range.
      */
     int invert(int c) {
-        int num = wrap(c);
-        char temp;
-        for (String s : _cycles) {
-            for (int i = 0; i < s.length(); i++) {
-                if (_alphabet.toChar(num) == s.charAt(i) && i != 0) {
-                    temp = s.charAt(i - 1);
-                    return _alphabet.toInt(temp);
-                } else if (_alphabet.toChar(num) == s.charAt(i) && i == 0) {
-                    temp = s.charAt(s.length() - 1);
-                    return _alphabet.toInt(temp);
-                }
-            }
+        if (c < 0 || c >= _inverse.length) {
+            c = wrap(c);
         }
-        return c;
+        return _inverse[c];
     }
 
     /**
@@ -161,16 +184,11 @@ class Permutation {
      * permutation for which no value maps to itself).
      */
     boolean derangement() {
-        int num = 0;
-        for (String s : _cycles) {
-            num += s.length();
-            if (s.length() == 1) {
+        for (int i = 0; i < _forward.length; i++) {
+            if (_forward[i] == i) {
                 return false;
             }
         }
-        if (num != alphabet().size()) {
-            return false;
-        }
         return true;
     }
 
@@ -179,7 +197,11 @@ class Permutation {
      */
     private Alphabet _alphabet;
     /**
-     * Array of cycles.
+     * Image of each index under this permutation.
+     */
+    private int[] _forward;
+    /**
+     * Image of each index under the inverse of this permutation.
      */
-    private String[] _cycles;
+    private int[] _inverse;
 }
@@ -58,6 +58,14 @@ public class PermutationTest {
         checkPerm("identity", UPPER_STRING, UPPER_STRING);
     }
 
+    @Test
+    public void checkNavalPerms() {
+        for (String name : NAVALA_MAP.keySet()) {
+            perm = new Permutation(NAVALA.get(name), UPPER);
+            checkPerm(name, UPPER_STRING, NAVALA_MAP.get(name));
+        }
+    }
+
     @Test
     public void testCase1() {
         Alphabet c = new Alphabet("ABCD");
@@ -105,4 +113,44 @@ public class PermutationTest {
         assertFalse(p.derangement());
     }
 
+    @Test
+    public void testSlice() {
+        Alphabet c = new Alphabet("ABCD");
+        String config = "xx (BA) (CD) yy";
+        Permutation p = new Permutation(config, 3, 12, c);
+        assertEquals(0, p.permute(1));
+        assertEquals(3, p.permute(2));
+        assertTrue(p.derangement());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testUnclosed() {
+        new Permutation("(AB) (CD", new Alphabet("ABCD"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testUnmatched() {
+        new Permutation("(AB)) (CD)", new Alphabet("ABCD"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNested() {
+        new Permutation("(A(B))", new Alphabet("ABCD"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testRepeated() {
+        new Permutation("(AB) (CA)", new Alphabet("ABCD"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotInAlphabet() {
+        new Permutation("(AE)", new Alphabet("ABCD"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testOutsideCycle() {
+        new Permutation("(AB) C", new Alphabet("ABCD"));
+    }
+
 }
@@ -0,0 +1,151 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/**
+ * A rotor used on its own, outside any machine, with a setting and an
+ * alphabet ring of its own.  The rotor itself is not changed, so it
+ * may be shared with machines and other PositionedRotors meanwhile.
+ *
+ * @author Ryan Johnson
+ */
+class PositionedRotor {
+
+    /**
+     * ROTOR, initially at setting 0 with alphabet ring 0.
+     */
+    PositionedRotor(Rotor rotor) {
+        _rotor = rotor;
+    }
+
+    /**
+     * Return my rotor.
+     */
+    Rotor rotor() {
+        return _rotor;
+    }
+
+    /**
+     * Return the size of my alphabet.
+     */
+    int size() {
+        return _rotor.size();
+    }
+
+    /**
+     * Return my current setting.
+     */
+    int setting() {
+        return _setting;
+    }
+
+    /**
+     * Set setting() to POSN.
+     */
+    void set(int posn) {
+        posn = _rotor.permutation().wrap(posn);
+        if (posn != 0 && _rotor.reflecting()) {
+            throw error("reflector has only one position");
+        }
+        _setting = posn;
+        updateOffset();
+    }
+
+    /**
+     * Set setting() to character CPOSN.
+     */
+    void set(char cposn) {
+        if (!_rotor.alphabet().contains(cposn)) {
+            throw error("Does not contain");
+        }
+        set(_rotor.alphabet().toInt(cposn));
+    }
+
+    /**
+     * Return my alphabet ring setting.
+     */
+    int alphabetRing() {
+        return _alphabetRing;
+    }
+
+    /**
+     * Sets the alphabet ring to LETTER.
+     */
+    void setAlphabetRing(char letter) {
+        _alphabetRing = _rotor.alphabet().toInt(letter);
+        updateOffset();
+    }
+
+    /**
+     * Return my setting relative to my alphabet ring, which with my
+     * rotor's wiring determines my conversions.
+     */
+    int offset() {
+        return _offset;
+    }
+
+    /**
+     * Return the conversion of P according to my rotor's permutation at
+     * my setting and alphabet ring.  P is taken modulo size().
+     */
+    int convertForward(int p) {
+        if (p < 0 || p >= size()) {
+            p = _rotor.permutation().wrap(p);
+        }
+        return _rotor.convertForward(p, _offset);
+    }
+
+    /**
+     * Return the conversion of E according to the inverse of my rotor's
+     * permutation at my setting and alphabet ring.  E is taken modulo
+     * size().
+     */
+    int convertBackward(int e) {
+        if (e < 0 || e >= size()) {
+            e = _rotor.permutation().wrap(e);
+        }
+        return _rotor.convertBackward(e, _offset);
+    }
+
+    /**
+     * Returns true iff I am positioned to allow the rotor to my left
+     * to advance.
+     */
+    boolean atNotch() {
+        return _rotor.notchAt(_setting);
+    }
+
+    /**
+     * Advance me one position, if my rotor can move.
+     */
+    void advance() {
+        if (_rotor.rotates()) {
+            set(_setting + 1);
+        }
+    }
+
+    /**
+     * Recompute _offset from my setting and alphabet ring.
+     */
+    private void updateOffset() {
+        _offset = _rotor.permutation().wrap(_setting - _alphabetRing);
+    }
+
+    /**
+     * My rotor.
+     */
+    private final Rotor _rotor;
+    /**
+     * My setting.
+     */
+    private int _setting;
+    /**
+     * My alphabet ring.
+     */
+    private int _alphabetRing;
+    /**
+     * My setting less my alphabet ring, modulo size().
+     */
+    private int _offset;
+
+}
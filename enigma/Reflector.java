@@ -22,18 +22,4 @@ class Reflector extends FixedRotor {
         return true;
     }
 
-    @Override
-    void set(char cposn) {
-        if (cposn != 0) {
-            throw error("reflector has only one position");
-        }
-    }
-
-    @Override
-    void set(int posn) {
-        if (posn != 0) {
-            throw error("reflector has only one position");
-        }
-    }
-
 }
@@ -3,7 +3,11 @@ package enigma;
 import static enigma.EnigmaException.*;
 
 /**
- * Superclass that represents a rotor in the enigma machine.
+ * Superclass that represents a rotor in the enigma machine.  A rotor's
+ * name, wiring, and notches never change, so any number of machines
+ * may share it; each machine keeps its own settings and alphabet rings
+ * for its rotors, and a PositionedRotor keeps them for a rotor used on
+ * its own.
  *
  * @author Ryan Johnson
  */
@@ -15,8 +19,15 @@ class Rotor {
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
-        _setting = 0;
-        _alphabetRing = 0;
+        int size = perm.size();
+        _forward = new int[2 * size];
+        _backward = new int[2 * size];
+        _wrap = new int[2 * size];
+        for (int i = 0; i < 2 * size; i++) {
+            _forward[i] = perm.permute(i % size) + size;
+            _backward[i] = perm.invert(i % size) + size;
+            _wrap[i] = i % size;
+        }
     }
 
     /**
@@ -61,83 +72,38 @@ class Rotor {
         return false;
     }
 
-    /**
-     * Return my current setting.
-     */
-    int setting() {
-        return _setting;
-    }
-
-    /**
-     * Set setting() to POSN.
-     */
-    void set(int posn) {
-        _setting = _permutation.wrap(posn);
-    }
-
-    /**
-     * Set setting() to character CPOSN.
-     */
-    void set(char cposn) {
-        if (!alphabet().contains(cposn)) {
-            throw error("Does not contain");
-        }
-        _setting = alphabet().toInt(cposn);
-    }
-
     /**
      * Return the conversion of P (an integer in the range 0..size()-1)
-     * according to my permutation.
-     */
-    int convertForward(int p) {
-        int permutable = (p + _setting - _alphabetRing) % size();
-        if (permutable < 0) {
-            permutable += size();
-        }
-        int perm = (_permutation.permute(permutable)
-                - _setting + _alphabetRing) % size();
-        if (perm < 0) {
-            perm += size();
-        }
-        return perm;
-    }
-
-    /**
-     * Return the conversion of E (an integer in the range 0..size()-1)
-     * according to the inverse of my permutation.
+     * according to my permutation when my setting less my alphabet ring
+     * is OFFSET (also in the range 0..size()-1).
      */
-    int convertBackward(int e) {
-        int permutable = (e + _setting - _alphabetRing) % size();
-        if (permutable < 0) {
-            permutable += size();
-        }
-        int perm = (_permutation.invert(permutable)
-                - _setting + _alphabetRing) % size();
-        if (perm < 0) {
-            perm += size();
-        }
-        return perm;
+    int convertForward(int p, int offset) {
+        return _wrap[_forward[p + offset] - offset];
     }
 
     /**
-     * Sets the alphabet ring to LETTER.
+     * Return the conversion of E according to the inverse of my
+     * permutation when my setting less my alphabet ring is OFFSET, as
+     * for convertForward(E, OFFSET).
      */
-    void setAlphabetRing(char letter) {
-        _alphabetRing = _permutation.alphabet().toInt(letter);
+    int convertBackward(int e, int offset) {
+        return _wrap[_backward[e + offset] - offset];
     }
 
     /**
-     * Returns true iff I am positioned to allow the rotor to my left
-     * to advance.
+     * Returns true iff setting POSN is one of my notches.  By default,
+     * I have none.
      */
-    boolean atNotch() {
+    boolean notchAt(int posn) {
         return false;
     }
 
     /**
-     * Advance me one position, if possible. By default, does nothing.
+     * Returns the number of times I must advance from setting POSN to
+     * reach a notch (0 if POSN is a notch), or -1 if I have no notches.
      */
-    void advance() {
+    int stepsToNotch(int posn) {
+        return -1;
     }
 
     @Override
@@ -153,14 +119,19 @@ class Rotor {
     /**
      * The permutation implemented by this rotor in its 0 position.
      */
-    private Permutation _permutation;
+    private final Permutation _permutation;
+    /**
+     * My permutation, unrolled over two turns: entry Q is size() plus
+     * the image of Q modulo size().  Indexed by input plus offset.
+     */
+    private final int[] _forward;
     /**
-     * My setting.
+     * As for _forward, but for the inverse of my permutation.
      */
-    private int _setting;
+    private final int[] _backward;
     /**
-     * My alphabetRing letter.
+     * Entry I is I modulo size(), for 0 <= I < 2 * size().
      */
-    private int _alphabetRing;
+    private final int[] _wrap;
 
 }
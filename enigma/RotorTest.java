@@ -41,7 +41,7 @@ public class RotorTest {
     public void testCase1() {
         Alphabet a = new Alphabet("ABCD");
         Permutation p = new Permutation("(BACD)", a);
-        Rotor x = new Rotor("Rotor1", p);
+        PositionedRotor x = new PositionedRotor(new Rotor("Rotor1", p));
         assertEquals(0, x.setting());
         x.set(3);
         assertEquals(3, x.setting());
@@ -63,7 +63,7 @@ public class RotorTest {
     public void testCase2() {
         Alphabet a = new Alphabet("ABCD");
         Permutation p = new Permutation("", a);
-        Rotor x = new Rotor("Rotor1", p);
+        PositionedRotor x = new PositionedRotor(new Rotor("Rotor1", p));
         assertEquals(0, x.setting());
         x.set(3);
         assertEquals(3, x.setting());
@@ -81,7 +81,7 @@ public class RotorTest {
     public void testCase3() {
         Alphabet a = new Alphabet("1234");
         Permutation p = new Permutation("(12) (3)", a);
-        Rotor x = new Rotor("Rotor1", p);
+        PositionedRotor x = new PositionedRotor(new Rotor("Rotor1", p));
         assertEquals(0, x.setting());
         x.set(3);
         assertEquals(3, x.setting());
@@ -95,4 +95,22 @@ public class RotorTest {
         assertEquals(0, x.convertBackward(0));
         assertEquals(3, x.convertForward(3));
     }
+
+    @Test
+    public void testRingSettings() {
+        Permutation p = new Permutation(NAVALA.get("I"), UPPER);
+        PositionedRotor x = new PositionedRotor(new Rotor("I", p));
+        for (int ring = 0; ring < 26; ring++) {
+            x.setAlphabetRing(UPPER.toChar(ring));
+            for (int posn = 0; posn < 26; posn++) {
+                x.set(posn);
+                for (int c = 0; c < 26; c++) {
+                    int fwd = p.wrap(p.permute(c + posn - ring) - posn + ring);
+                    int back = p.wrap(p.invert(c + posn - ring) - posn + ring);
+                    assertEquals(fwd, x.convertForward(c));
+                    assertEquals(back, x.convertBackward(c));
+                }
+            }
+        }
+    }
 }
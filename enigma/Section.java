@@ -0,0 +1,199 @@
+package enigma;
+
+import java.io.CharArrayWriter;
+
+/**
+ * One section of input (a settings line and the message lines that
+ * follow it), recorded so that it can be converted later, possibly on
+ * another thread.
+ *
+ * @author Ryan Johnson
+ */
+class Section {
+
+    /**
+     * Marker in the list of lines for an empty output line.
+     */
+    static final int NEWLINE = -1;
+
+    /**
+     * A section with settings line SETTINGS.  Its rotors start at
+     * POSITIONS with alphabet rings RINGS (both as for
+     * Machine.setRotors), whatever SETTINGS itself says about them.
+     */
+    Section(String settings, String positions, String rings) {
+        _settings = settings;
+        _positions = positions;
+        _rings = rings;
+    }
+
+    /**
+     * Add the message line consisting of the first LEN characters of
+     * LINE.
+     */
+    void addLine(char[] line, int len) {
+        if (_textLength + len > _text.length) {
+            char[] larger = new char[Math.max(2 * _text.length,
+                    _textLength + len)];
+            System.arraycopy(_text, 0, larger, 0, _textLength);
+            _text = larger;
+        }
+        System.arraycopy(line, 0, _text, _textLength, len);
+        _textLength += len;
+        addLength(len);
+    }
+
+    /**
+     * Add an empty output line.
+     */
+    void addNewLine() {
+        addLength(NEWLINE);
+    }
+
+    /**
+     * Return the number of lines added.
+     */
+    int size() {
+        return _numLines;
+    }
+
+    /**
+     * Return the length of message line K, or NEWLINE.
+     */
+    int length(int k) {
+        return _lengths[k];
+    }
+
+    /**
+     * Return the text of all message lines, one after another.
+     */
+    char[] text() {
+        return _text;
+    }
+
+    /**
+     * Return my settings line.
+     */
+    String settings() {
+        return _settings;
+    }
+
+    /**
+     * Return the starting positions of my rotors.
+     */
+    String positions() {
+        return _positions;
+    }
+
+    /**
+     * Return the alphabet rings of my rotors.
+     */
+    String rings() {
+        return _rings;
+    }
+
+    /**
+     * Return the buffer receiving my converted output.
+     */
+    CharArrayWriter output() {
+        return _output;
+    }
+
+    /**
+     * Record that my rotors, named NAMES with the reflector first, were
+     * left at POSITIONS after conversion.
+     */
+    void setFinalPositions(String[] names, String positions) {
+        _finalNames = names;
+        _finalPositions = positions;
+    }
+
+    /**
+     * Return the names of my rotors, reflector first, or null if I
+     * have not been converted.
+     */
+    String[] finalNames() {
+        return _finalNames;
+    }
+
+    /**
+     * Return the positions my rotors were left at, or null if I have
+     * not been converted.
+     */
+    String finalPositions() {
+        return _finalPositions;
+    }
+
+    /**
+     * Return the error that stopped my conversion, or null.
+     */
+    RuntimeException error() {
+        return _error;
+    }
+
+    /**
+     * Record that my conversion stopped with EXCP.
+     */
+    void setError(RuntimeException excp) {
+        _error = excp;
+    }
+
+    /**
+     * Append LEN to _lengths.
+     */
+    private void addLength(int len) {
+        if (_numLines == _lengths.length) {
+            int[] larger = new int[2 * _lengths.length];
+            System.arraycopy(_lengths, 0, larger, 0, _numLines);
+            _lengths = larger;
+        }
+        _lengths[_numLines] = len;
+        _numLines += 1;
+    }
+
+    /**
+     * My settings line.
+     */
+    private final String _settings;
+    /**
+     * Starting positions of my rotors.
+     */
+    private final String _positions;
+    /**
+     * Alphabet rings of my rotors.
+     */
+    private final String _rings;
+    /**
+     * Length of each message line, or NEWLINE, in order.
+     */
+    private int[] _lengths = new int[16];
+    /**
+     * Number of valid entries in _lengths.
+     */
+    private int _numLines;
+    /**
+     * Text of the message lines.
+     */
+    private char[] _text = new char[256];
+    /**
+     * Number of valid characters in _text.
+     */
+    private int _textLength;
+    /**
+     * Converted output.
+     */
+    private final CharArrayWriter _output = new CharArrayWriter();
+    /**
+     * Names of my rotors after conversion.
+     */
+    private String[] _finalNames;
+    /**
+     * Positions of my rotors after conversion.
+     */
+    private String _finalPositions;
+    /**
+     * Error that stopped conversion, if any.
+     */
+    private RuntimeException _error;
+
+}
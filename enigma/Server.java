@@ -0,0 +1,567 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.error;
+
+/**
+ * A long-running server that converts messages for clients over a
+ * socket, so that they need not each start a JVM and parse their
+ * configuration.  Parsed configurations are kept by file (and parsed
+ * again if the file changes), and each has a pool of machines sharing
+ * its rotors, since a machine's settings cannot be shared by
+ * connections converting at the same time.
+ *
+ * Clients may name only configuration files in the directory given
+ * when the server starts, and are told only that a configuration could
+ * not be opened or is bad, not why.  A Unix domain socket file is
+ * removed when the server stops, and a stale one left by a server that
+ * died is removed when the next one starts.
+ *
+ * A request is the length of the configuration file's name as a 4-byte
+ * big-endian int, the name in UTF-8, and then input in the format Main
+ * reads, in UTF-8, up to the end of the client's side of the
+ * connection.  The response is a sequence of frames, each a type byte,
+ * a 4-byte big-endian length, and that many bytes of UTF-8 text.  'D'
+ * frames carry output exactly as Main would print it; the response
+ * ends with a 'K' frame if the input was converted completely, or an
+ * 'E' frame holding an error message.
+ *
+ * @author Ryan Johnson
+ */
+class Server {
+
+    /**
+     * A server reading only the configuration files in the directory
+     * CONFIGS, whose machines are CompiledMachines iff COMPILE, and
+     * have keystream limit KEYSTREAMLIMIT (see
+     * Machine.setKeystreamLimit) and keystream cache KEYSTREAMCACHE,
+     * which may be null (see Machine.setKeystreamCache).
+     */
+    Server(Path configs, boolean compile, int keystreamLimit,
+           KeystreamCache keystreamCache) {
+        try {
+            _configs = configs.toRealPath();
+        } catch (IOException excp) {
+            throw error("bad configuration directory: %s", configs);
+        }
+        if (!Files.isDirectory(_configs)) {
+            throw error("bad configuration directory: %s", configs);
+        }
+        _compile = compile;
+        _keystreamLimit = keystreamLimit;
+        _keystreamCache = keystreamCache;
+    }
+
+    /**
+     * Return the address named by ADDRESS: a port on the loopback
+     * interface if it is a number, and otherwise the path of a Unix
+     * domain socket.
+     */
+    static SocketAddress address(String address) {
+        if (address.matches("\\d+")) {
+            try {
+                return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                             Integer.parseInt(address));
+            } catch (IllegalArgumentException excp) {
+                throw error("bad port: %s", address);
+            }
+        }
+        try {
+            return UnixDomainSocketAddress.of(address);
+        } catch (InvalidPathException excp) {
+            throw error("bad socket path: %s", address);
+        }
+    }
+
+    /**
+     * Return a channel listening on ADDRESS.  A Unix domain socket file
+     * left at ADDRESS by a server that is no longer running is removed
+     * first.
+     */
+    static ServerSocketChannel listen(SocketAddress address) {
+        if (address instanceof UnixDomainSocketAddress) {
+            removeStale((UnixDomainSocketAddress) address);
+        }
+        try {
+            ServerSocketChannel listener =
+                address instanceof UnixDomainSocketAddress
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                : ServerSocketChannel.open();
+            return listener.bind(address);
+        } catch (IOException excp) {
+            throw error("could not listen on %s", address);
+        }
+    }
+
+    /**
+     * Remove the socket file at ADDRESS, unless there is none or a
+     * server is listening on it.
+     */
+    private static void removeStale(UnixDomainSocketAddress address) {
+        if (!Files.exists(address.getPath())) {
+            return;
+        }
+        boolean live = false;
+        try {
+            SocketChannel.open(address).close();
+            live = true;
+        } catch (IOException excp) {
+            /* Nothing is listening. */
+        }
+        if (live) {
+            throw error("%s is in use", address);
+        }
+        removeSocket(address.getPath());
+    }
+
+    /**
+     * Remove the socket file SOCKET, if it is there.
+     */
+    private static void removeSocket(Path socket) {
+        try {
+            Files.deleteIfExists(socket);
+        } catch (IOException excp) {
+            /* Left for the next server to remove. */
+        }
+    }
+
+    /**
+     * Serve the connections accepted by LISTENER, each on its own
+     * thread, until LISTENER is closed or the JVM exits.  If LISTENER is
+     * a Unix domain socket, its file is removed when serving stops.
+     */
+    void serve(ServerSocketChannel listener) {
+        Path socket = null;
+        try {
+            if (listener.getLocalAddress()
+                    instanceof UnixDomainSocketAddress) {
+                socket = ((UnixDomainSocketAddress)
+                          listener.getLocalAddress()).getPath();
+            }
+        } catch (IOException excp) {
+            throw error("could not accept connection");
+        }
+        Path path = socket;
+        Thread cleanup = new Thread(() -> removeSocket(path),
+                                    "enigma-cleanup");
+        if (socket != null) {
+            Runtime.getRuntime().addShutdownHook(cleanup);
+        }
+        ExecutorService connections = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "enigma-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            while (true) {
+                SocketChannel connection = listener.accept();
+                connections.execute(() -> handle(connection));
+            }
+        } catch (ClosedChannelException excp) {
+            /* Stopped. */
+        } catch (IOException excp) {
+            throw error("could not accept connection");
+        } finally {
+            connections.shutdown();
+            if (socket != null) {
+                removeSocket(socket);
+                try {
+                    Runtime.getRuntime().removeShutdownHook(cleanup);
+                } catch (IllegalStateException excp) {
+                    /* Already shutting down. */
+                }
+            }
+        }
+    }
+
+    /**
+     * Answer the request on CONNECTION and close it.  Whatever input
+     * was not needed is read before closing, so that the client does
+     * not lose the end of the response to a reset.
+     */
+    private void handle(SocketChannel connection) {
+        try (SocketChannel channel = connection) {
+            InputStream in = input(channel);
+            FrameWriter out = new FrameWriter(new DataOutputStream(
+                new BufferedOutputStream(output(channel), BUFFER_SIZE)));
+            try {
+                Library library = library(readName(in));
+                Machine machine = library.borrow();
+                try {
+                    new Main(machine, new LineReader(new InputStreamReader(
+                        in, StandardCharsets.UTF_8)), out).process();
+                } finally {
+                    library.release(machine);
+                }
+                out.end(OK, "");
+            } catch (EnigmaException excp) {
+                out.end(ERROR, excp.getMessage());
+            } catch (RuntimeException excp) {
+                out.end(ERROR, excp.toString());
+            }
+            channel.shutdownOutput();
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException excp) {
+            /* The client has gone. */
+        }
+    }
+
+    /**
+     * Return the configuration file name at the start of a request
+     * read from IN.
+     */
+    private static String readName(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int len = data.readInt();
+        if (len < 0 || len > MAX_NAME) {
+            throw error("bad request");
+        }
+        byte[] name = new byte[len];
+        data.readFully(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return the library for the configuration file NAME, relative to
+     * _configs, parsing it unless it is unchanged since it was last
+     * parsed.  A file outside _configs is treated as missing, and what
+     * is wrong with a bad file is not reported, so that clients learn
+     * nothing about files they may not use.
+     */
+    private Library library(String name) {
+        Path path;
+        byte[] text;
+        try {
+            path = _configs.resolve(name).toRealPath();
+            if (!path.startsWith(_configs)) {
+                throw error("could not open %s", name);
+            }
+            text = Files.readAllBytes(path);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+        byte[] hash = ConfigCache.hash(text);
+        Library library = _libraries.get(path.toString());
+        if (library == null || !Arrays.equals(library._hash, hash)) {
+            ConfigCache.Config config;
+            try {
+                config = Main.parseConfig(
+                    new Scanner(new ByteArrayInputStream(text)));
+            } catch (RuntimeException excp) {
+                throw error("bad configuration %s", name);
+            }
+            library = new Library(hash, config);
+            _libraries.put(path.toString(), library);
+        }
+        return library;
+    }
+
+    /**
+     * Convert the input read from IN with the configuration file named
+     * CONFIG by the server at SERVER, writing the output to OUT.
+     * Throws the error reported by the server, if any.
+     */
+    static void request(SocketAddress server, String config,
+                        InputStream in, Writer out) {
+        try (SocketChannel channel = SocketChannel.open(server)) {
+            Thread sender = new Thread(() -> send(channel, config, in),
+                                       "enigma-request");
+            sender.setDaemon(true);
+            sender.start();
+            DataInputStream frames = new DataInputStream(
+                new BufferedInputStream(input(channel), BUFFER_SIZE));
+            while (true) {
+                int type = frames.read();
+                if (type < 0) {
+                    throw error("server closed connection");
+                }
+                byte[] bytes = new byte[frames.readInt()];
+                frames.readFully(bytes);
+                String text = new String(bytes, StandardCharsets.UTF_8);
+                if (type == DATA) {
+                    out.write(text);
+                } else if (type == ERROR) {
+                    throw new EnigmaException(text);
+                } else if (type == OK) {
+                    return;
+                } else {
+                    throw error("bad response from server");
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not talk to server at %s", server);
+        }
+    }
+
+    /**
+     * Send the request for converting IN with configuration file CONFIG
+     * on CHANNEL, and close CHANNEL for output.
+     */
+    private static void send(SocketChannel channel, String config,
+                             InputStream in) {
+        try {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(output(channel), BUFFER_SIZE));
+            byte[] name = config.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+            in.transferTo(out);
+            out.flush();
+            channel.shutdownOutput();
+        } catch (IOException excp) {
+            /* The response reports what went wrong. */
+        }
+    }
+
+    /**
+     * Return a stream reading from CHANNEL.  Unlike the streams of
+     * java.nio.channels.Channels, it does not lock out writing to
+     * CHANNEL while a read is waiting.
+     */
+    private static InputStream input(SocketChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return len == 0 ? 0
+                    : channel.read(ByteBuffer.wrap(b, off, len));
+            }
+        };
+    }
+
+    /**
+     * Return a stream writing to CHANNEL, as for input(CHANNEL).
+     */
+    private static OutputStream output(SocketChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        };
+    }
+
+    /**
+     * A parsed configuration and a pool of machines built from it.
+     */
+    private class Library {
+
+        /**
+         * A library of machines with configuration CONFIG, whose text
+         * has hash HASH.
+         */
+        Library(byte[] hash, ConfigCache.Config config) {
+            _hash = hash;
+            _prototype = _compile
+                ? new CompiledMachine(config.alphabet(), config.numRotors(),
+                        config.pawls(), config.rotors(), TABLE_CAPACITY)
+                : new Machine(config.alphabet(), config.numRotors(),
+                        config.pawls(), config.rotors());
+            _prototype.setKeystreamLimit(_keystreamLimit);
+            _prototype.setKeystreamCache(_keystreamCache);
+        }
+
+        /**
+         * Return a machine for the sole use of the caller until it is
+         * released.
+         */
+        Machine borrow() {
+            Machine machine = _idle.poll();
+            return machine != null ? machine : _prototype.copy();
+        }
+
+        /**
+         * Return MACHINE, which was borrowed, to the pool.
+         */
+        void release(Machine machine) {
+            machine.reset();
+            _idle.offer(machine);
+        }
+
+        /**
+         * Hash of the text of my configuration.
+         */
+        private final byte[] _hash;
+        /**
+         * A machine that is copied but never used.
+         */
+        private final Machine _prototype;
+        /**
+         * Machines not in use.
+         */
+        private final ConcurrentLinkedQueue<Machine> _idle =
+            new ConcurrentLinkedQueue<Machine>();
+    }
+
+    /**
+     * A Writer that sends what is written to it as 'D' frames.
+     */
+    private static class FrameWriter extends Writer {
+
+        /**
+         * A writer of frames to OUT.
+         */
+        FrameWriter(DataOutputStream out) {
+            _out = out;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            while (len > 0) {
+                if (_len == _chars.length) {
+                    frame();
+                }
+                int n = Math.min(len, _chars.length - _len);
+                System.arraycopy(cbuf, off, _chars, _len, n);
+                _len += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            frame();
+            _out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        /**
+         * Send what has been written and then a frame of type TYPE
+         * holding TEXT.
+         */
+        void end(byte type, String text) throws IOException {
+            frame();
+            write(type, text.getBytes(StandardCharsets.UTF_8));
+            _out.flush();
+        }
+
+        /**
+         * Send what has been written, if anything, as a 'D' frame.
+         */
+        private void frame() throws IOException {
+            if (_len > 0) {
+                write(DATA, new String(_chars, 0, _len)
+                      .getBytes(StandardCharsets.UTF_8));
+                _len = 0;
+            }
+        }
+
+        /**
+         * Send a frame of type TYPE holding BYTES.
+         */
+        private void write(byte type, byte[] bytes) throws IOException {
+            _out.writeByte(type);
+            _out.writeInt(bytes.length);
+            _out.write(bytes);
+        }
+
+        /**
+         * Where frames go.
+         */
+        private final DataOutputStream _out;
+        /**
+         * Characters written since the last frame.
+         */
+        private final char[] _chars = new char[BUFFER_SIZE];
+        /**
+         * Number of characters in _chars.
+         */
+        private int _len;
+    }
+
+    /**
+     * Type of a frame of output.
+     */
+    static final byte DATA = 'D';
+    /**
+     * Type of the frame ending a successful response.
+     */
+    static final byte OK = 'K';
+    /**
+     * Type of the frame ending a failed response.
+     */
+    static final byte ERROR = 'E';
+
+    /**
+     * Size of socket buffers, and of the largest 'D' frame in chars.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * Longest configuration file name accepted, in bytes.
+     */
+    private static final int MAX_NAME = 1 << 12;
+    /**
+     * Number of tables kept by a CompiledMachine.
+     */
+    private static final int TABLE_CAPACITY = 1 << 12;
+
+    /**
+     * The directory holding the only configuration files I read.
+     */
+    private final Path _configs;
+    /**
+     * True iff my machines are CompiledMachines.
+     */
+    private final boolean _compile;
+    /**
+     * Keystream limit of my machines.
+     */
+    private final int _keystreamLimit;
+    /**
+     * Keystream cache shared by all my machines, or null.
+     */
+    private final KeystreamCache _keystreamCache;
+    /**
+     * Libraries by configuration file path.
+     */
+    private final ConcurrentHashMap<String, Library> _libraries =
+        new ConcurrentHashMap<String, Library>();
+
+}
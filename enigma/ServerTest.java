@@ -0,0 +1,203 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Scanner;
+
+import static enigma.TestUtils.NAVALA;
+import static org.junit.Assert.*;
+
+/**
+ * The suite of all JUnit tests for the Server class.
+ *
+ * @author Ryan Johnson
+ */
+public class ServerTest {
+
+    /**
+     * Testing time limit.
+     */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /**
+     * A configuration with the naval rotors B, Beta, I, II, III, and IV.
+     */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ 5 3\n"
+        + "I MQ " + NAVALA.get("I") + "\n"
+        + "II ME " + NAVALA.get("II") + "\n"
+        + "III MV " + NAVALA.get("III") + "\n"
+        + "IV MJ " + NAVALA.get("IV") + "\n"
+        + "Beta N " + NAVALA.get("Beta") + "\n"
+        + "B R " + NAVALA.get("B") + "\n";
+
+    /**
+     * Input whose second section continues from where the first left
+     * its rotors and rings.
+     */
+    private static final String INPUT =
+        "* B Beta III IV I AXLE BCD (YF) (ZH)\n"
+        + "FROM HIS SHOULDER HIAWATHA\n"
+        + "\n"
+        + "TOOK THE CAMERA OF ROSEWOOD\n"
+        + "* B Beta I II III A (AQ)\n"
+        + "MADE OF SLIDING FOLDING ROSEWOOD\n";
+
+    /**
+     * Return the output of Main converting INPUT with a new machine
+     * configured by CONFIG.
+     */
+    private String local(String input) {
+        ConfigCache.Config config = Main.parseConfig(
+            new Scanner(CONFIG));
+        Machine M = new Machine(config.alphabet(), config.numRotors(),
+                                config.pawls(), config.rotors());
+        StringWriter out = new StringWriter();
+        new Main(M, new LineReader(new InputStreamReader(
+            new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+            StandardCharsets.UTF_8)), out).process();
+        return out.toString();
+    }
+
+    /**
+     * Return the output of the server at ADDRESS converting INPUT with
+     * the configuration file CONFIG.
+     */
+    private String remote(SocketAddress address, Path config, String input) {
+        StringWriter out = new StringWriter();
+        Server.request(address, config.toString(),
+                       new ByteArrayInputStream(
+                           input.getBytes(StandardCharsets.UTF_8)), out);
+        return out.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRequests() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path config = dir.resolve("naval.conf");
+        ServerSocketChannel listener = Server.listen(new InetSocketAddress(
+            InetAddress.getLoopbackAddress(), 0));
+        Thread serving = new Thread(() ->
+            new Server(dir, false, 0, null).serve(listener));
+        serving.start();
+        try {
+            Files.write(config, CONFIG.getBytes(StandardCharsets.UTF_8));
+            SocketAddress address = listener.getLocalAddress();
+            String expected = local(INPUT);
+            assertEquals(expected, remote(address, config, INPUT));
+            assertEquals(expected,
+                         remote(address, config.getFileName(), INPUT));
+            try {
+                remote(address, config, "* B Beta III IV I AXLE (YF\n");
+                fail("bad settings accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+            assertEquals(expected, remote(address, config, INPUT));
+            Files.write(config, "AB 2 1\n".getBytes(StandardCharsets.UTF_8));
+            try {
+                remote(address, config, INPUT);
+                fail("changed configuration not reread");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        } finally {
+            listener.close();
+            serving.join();
+            Files.delete(config);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testConfigDirectory() throws IOException,
+                                             InterruptedException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path outside = Files.createTempFile("enigma", ".conf");
+        Path bad = dir.resolve("bad.conf");
+        ServerSocketChannel listener = Server.listen(new InetSocketAddress(
+            InetAddress.getLoopbackAddress(), 0));
+        Thread serving = new Thread(() ->
+            new Server(dir, false, 0, null).serve(listener));
+        serving.start();
+        try {
+            Files.write(outside, CONFIG.getBytes(StandardCharsets.UTF_8));
+            Files.write(bad, "AB 2 1\nSECRET\n".getBytes(
+                StandardCharsets.UTF_8));
+            SocketAddress address = listener.getLocalAddress();
+            Path[] names = {
+                outside, dir.resolve("..").resolve(outside.getFileName()),
+                dir.resolve("missing.conf"), bad,
+            };
+            for (Path name : names) {
+                try {
+                    remote(address, name, INPUT);
+                    fail(name + " accepted");
+                } catch (EnigmaException excp) {
+                    assertFalse(excp.getMessage().contains("SECRET"));
+                    assertTrue(excp.getMessage(),
+                               excp.getMessage().equals("could not open "
+                                                        + name)
+                               || excp.getMessage().equals(
+                                   "bad configuration " + name));
+                }
+            }
+        } finally {
+            listener.close();
+            serving.join();
+            Files.delete(bad);
+            Files.delete(dir);
+            Files.delete(outside);
+        }
+    }
+
+    @Test
+    public void testSocketFile() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("enigma.sock");
+        SocketAddress address = UnixDomainSocketAddress.of(socket);
+        Server.listen(address).close();
+        assertTrue("no stale socket file", Files.exists(socket));
+        ServerSocketChannel listener = Server.listen(address);
+        try {
+            Server.listen(address);
+            fail("live socket replaced");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        Thread serving = new Thread(() ->
+            new Server(dir, false, 0, null).serve(listener));
+        serving.start();
+        Path config = dir.resolve("naval.conf");
+        try {
+            Files.write(config, CONFIG.getBytes(StandardCharsets.UTF_8));
+            assertEquals(local(INPUT), remote(address, config, INPUT));
+        } finally {
+            listener.close();
+            serving.join();
+            Files.delete(config);
+        }
+        assertFalse("socket file left", Files.exists(socket));
+        Files.delete(dir);
+    }
+
+}
@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -39,6 +40,68 @@ class TestUtils {
                   + "(PW) (QZ) (SX) (UY)");
     }
 
+    /** The notches of the naval moving rotors. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return the naval rotors NAMES, in that order, over the upper-case
+     *  alphabet A: B and C are reflectors, Beta and Gamma are fixed,
+     *  and the others move with their naval notches. */
+    static ArrayList<Rotor> navalRotors(Alphabet a, String... names) {
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        for (String name : names) {
+            Permutation perm = new Permutation(NAVALA.get(name), a);
+            if (name.equals("B") || name.equals("C")) {
+                rotors.add(new Reflector(name, perm));
+            } else if (NAVAL_NOTCHES.containsKey(name)) {
+                rotors.add(new MovingRotor(name, perm,
+                                           NAVAL_NOTCHES.get(name)));
+            } else {
+                rotors.add(new FixedRotor(name, perm));
+            }
+        }
+        return rotors;
+    }
+
+    /** Return a machine with five slots and three pawls that has the
+     *  naval rotors III, IV, I, Beta, and B, with none inserted. */
+    static Machine emptyNavalMachine() {
+        Alphabet a = new Alphabet();
+        return new Machine(a, 5, 3,
+                           navalRotors(a, "III", "IV", "I", "Beta", "B"));
+    }
+
+    /** Insert the rotors B Beta III IV I into M, set them to SETTING
+     *  with alphabet rings RINGS (or leave the rings at A if RINGS is
+     *  null), and set the plugboard to the cycles PLUGBOARD.  Return
+     *  M. */
+    static Machine setUpNaval(Machine M, String setting, String rings,
+                              String plugboard) {
+        M.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        M.setRotors(setting);
+        if (rings != null) {
+            M.setMachineAlphabet(rings);
+        }
+        M.setPlugboard(new Permutation(plugboard, M.alphabet()));
+        return M;
+    }
+
+    /** Return the naval machine of the rotors B Beta III IV I set as
+     *  for setUpNaval(M, SETTING, RINGS, PLUGBOARD). */
+    static Machine navalMachine(String setting, String rings,
+                                String plugboard) {
+        return setUpNaval(emptyNavalMachine(), setting, rings, plugboard);
+    }
+
     /** The mapping of the upper-case alphabet by NAVALA. */
     static final HashMap<String, String> NAVALA_MAP = new HashMap<>();
     static {
@@ -15,8 +15,13 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(PermutationTest.class,
-                MovingRotorTest.class, RotorTest.class, MachineTest.class));
+        System.exit(textui.runClasses(AlphabetTest.class, PermutationTest.class,
+                MovingRotorTest.class, RotorTest.class, MachineTest.class,
+                BombeTest.class, HillClimberTest.class, MetricsTest.class,
+                ConfigCacheTest.class, ServerTest.class,
+                BatchMachineTest.class, AsciiConverterTest.class,
+                MachineSessionTest.class, MachineProcessorTest.class,
+                GroupWriterTest.class, KeystreamCacheTest.class));
     }
 }
 
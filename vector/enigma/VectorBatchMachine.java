@@ -0,0 +1,112 @@
+package enigma;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A BatchMachine that converts its lanes with the Java Vector API: one
+ * lane per element of the preferred int vector (8 with AVX2, 16 with
+ * AVX-512).  The settings of each slot are an IntVector, stepped with
+ * masks computed from gathers into the notch tables, and the characters
+ * of a keystroke pass through each rotor as a gather into its
+ * conversion table.  BatchMachine.create returns one of these when this
+ * class and the jdk.incubator.vector module are available.
+ *
+ * @author Ryan Johnson
+ */
+class VectorBatchMachine extends BatchMachine {
+
+    /**
+     * An engine for MACHINE as for BatchMachine(MACHINE).
+     */
+    VectorBatchMachine(Machine machine) {
+        super(machine);
+    }
+
+    @Override
+    int lanes() {
+        return SPECIES.length();
+    }
+
+    @Override
+    void convertGroup(int[] posns, int[] block, int steps) {
+        int lanes = lanes();
+        int size = size();
+        int last = slots() - 1;
+        int[] index = new int[lanes];
+        IntVector[] settings = new IntVector[slots()];
+        for (int i = 0; i <= last; i++) {
+            settings[i] = IntVector.fromArray(SPECIES, posns, i * lanes);
+        }
+        IntVector[] offsets = new IntVector[slots()];
+        for (int t = 0; t < steps; t++) {
+            for (int i = 0; i <= last; i++) {
+                if (!rotates(i)) {
+                    continue;
+                }
+                VectorMask<Integer> move = i == last ? SPECIES.maskAll(true)
+                    : atNotch(i + 1, settings[i + 1], index);
+                if (i > 0 && rotates(i - 1)) {
+                    move = move.or(atNotch(i, settings[i], index));
+                }
+                IntVector next = settings[i].add(1, move);
+                settings[i] = next.blend(0, next.eq(size));
+            }
+            for (int i = 0; i <= last; i++) {
+                IntVector offset = settings[i].sub(ring(i));
+                offsets[i] = offset.add(size, offset.lt(0));
+            }
+            IntVector c = IntVector.fromArray(SPECIES, block, t * lanes);
+            c = lookup(plugboard(), c, index);
+            for (int i = last; i > 0; i--) {
+                c = pass(forward(i), offsets[i], c, index);
+            }
+            for (int i = 0; i <= last; i++) {
+                c = pass(backward(i), offsets[i], c, index);
+            }
+            lookup(plugboard(), c, index).intoArray(block, t * lanes);
+        }
+        for (int i = 0; i <= last; i++) {
+            settings[i].intoArray(posns, i * lanes);
+        }
+    }
+
+    /**
+     * Return the mask of the lanes in which the rotor in slot I, whose
+     * settings are SETTINGS, is at a notch.  INDEX is scratch space.
+     */
+    private VectorMask<Integer> atNotch(int i, IntVector settings,
+                                        int[] index) {
+        return lookup(notches(i), settings, index).compare(
+            VectorOperators.NE, 0);
+    }
+
+    /**
+     * Return the characters C passed through a rotor with conversion
+     * table TABLE at offsets OFFSETS.  INDEX is scratch space.
+     */
+    private IntVector pass(int[] table, IntVector offsets, IntVector c,
+                           int[] index) {
+        IntVector result = lookup(table, c.add(offsets), index).sub(offsets);
+        return result.add(size(), result.lt(0));
+    }
+
+    /**
+     * Return the elements of TABLE at the indices in INDICES, using
+     * INDEX as scratch space.
+     */
+    private static IntVector lookup(int[] table, IntVector indices,
+                                    int[] index) {
+        indices.intoArray(index, 0);
+        return IntVector.fromArray(SPECIES, table, 0, index, 0);
+    }
+
+    /**
+     * Shape of my vectors.
+     */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+}